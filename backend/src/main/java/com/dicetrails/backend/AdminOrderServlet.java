@@ -2,9 +2,11 @@ package com.dicetrails.backend;
 
 import com.dicetrails.backend.model.Order;
 import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.OrderQuery;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -20,14 +22,89 @@ public class AdminOrderServlet extends HttpServlet {
 
     private final Gson gson = new Gson();
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * Without paging parameters this returns every order as a JSON array, as it always has.
+     * With {@code limit}, {@code cursor} or {@code sort} (newest|oldest) it returns one page:
+     * {@code {"orders": [...], "hasMore": bool, "nextCursor": "..."}}. Both forms accept the
+     * {@code status}, {@code region}, {@code from} and {@code to} filters (dates in epoch ms).
+     * Orders are written to the response one at a time rather than built into one string.
+     */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
         PrintWriter out = resp.getWriter();
 
-        // Get all orders for admin
-        List<Order> allOrders = DataManager.getInstance().getAllOrders();
-        out.println(gson.toJson(allOrders));
+        OrderQuery query = new OrderQuery();
+        boolean paged = req.getParameter("limit") != null || req.getParameter("cursor") != null
+                || req.getParameter("sort") != null;
+        try {
+            query.setStatus(emptyToNull(req.getParameter("status")));
+            query.setRegion(emptyToNull(req.getParameter("region")));
+            query.setFrom(parseDate(req.getParameter("from")));
+            query.setTo(parseDate(req.getParameter("to")));
+            query.setNewestFirst(!"oldest".equalsIgnoreCase(req.getParameter("sort")));
+            query.setLimit(parseLimit(req.getParameter("limit")));
+            query.setCursor(req.getParameter("cursor"));
+        } catch (IllegalArgumentException e) {
+            out.println("{\"success\": false, \"message\": \"" + e.getMessage() + "\"}");
+            return;
+        }
+
+        JsonWriter writer = new JsonWriter(out);
+        if (paged) {
+            OrderQuery.Page page = DataManager.getInstance().findOrders(query);
+            writer.beginObject();
+            writer.name("orders");
+            writeOrders(writer, page.getOrders(), query, false);
+            writer.name("hasMore").value(page.hasMore());
+            writer.name("nextCursor").value(page.getNextCursor());
+            writer.endObject();
+        } else {
+            // Get all orders for admin; the snapshot is shared, so nothing is copied here
+            writeOrders(writer, DataManager.getInstance().getAllOrders(), query, true);
+        }
+        writer.flush();
+    }
+
+    private void writeOrders(JsonWriter writer, List<Order> orders, OrderQuery query, boolean filter)
+            throws IOException {
+        writer.beginArray();
+        for (Order order : orders) {
+            if (!filter || query.matchesWithDates(order)) {
+                gson.toJson(order, Order.class, writer);
+            }
+        }
+        writer.endArray();
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static Long parseDate(String value) {
+        if (emptyToNull(value) == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Dates must be epoch milliseconds");
+        }
+    }
+
+    private static int parseLimit(String value) {
+        if (emptyToNull(value) == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
     }
 
     @Override
@@ -0,0 +1,88 @@
+package com.dicetrails.backend;
+
+import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.SalesAnalytics;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+@WebServlet("/api/admin/analytics")
+public class AnalyticsServlet extends HttpServlet {
+
+    private final Gson gson = new Gson();
+
+    /**
+     * Revenue, order count, units, average order value, shipping fees and voucher /
+     * newsletter usage per {@code granularity} (hour|day|month, UTC; default day) bucket
+     * between {@code from} and {@code to} (epoch ms; default the last 48 hours, 30 days or
+     * 12 months up to now), each with a {@code byRegion} and {@code byStatus} split.
+     * {@code region} and {@code status} restrict the report to matching orders. The overall
+     * totals also carry {@code customers}, the number of distinct users behind them.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter out = resp.getWriter();
+
+        String granularityParam = emptyToNull(req.getParameter("granularity"));
+        SalesAnalytics.Granularity granularity = granularityParam == null ? SalesAnalytics.Granularity.DAY
+                : SalesAnalytics.Granularity.fromParam(granularityParam);
+        if (granularity == null) {
+            out.println("{\"success\": false, \"message\": \"Unknown granularity, use hour, day or month\"}");
+            return;
+        }
+
+        SalesAnalytics.Report report;
+        int customers;
+        try {
+            Long to = parseDate(req.getParameter("to"));
+            Long from = parseDate(req.getParameter("from"));
+            if (to == null) {
+                to = System.currentTimeMillis();
+            }
+            if (from == null) {
+                from = granularity.plus(granularity.floor(to), 1 - granularity.getDefaultBuckets());
+            }
+            if (from > to) {
+                throw new IllegalArgumentException("from must not be after to");
+            }
+            String region = emptyToNull(req.getParameter("region"));
+            String status = emptyToNull(req.getParameter("status"));
+            report = DataManager.getInstance().getSalesReport(granularity, from, to, region, status);
+            // Distinct customers cannot be summed over buckets, so they come from a scan of
+            // the order columns over the same whole buckets
+            customers = DataManager.getInstance().countCustomers(granularity.floor(from),
+                    granularity.plus(granularity.floor(to), 1) - 1, region, status);
+        } catch (IllegalArgumentException e) {
+            out.println("{\"success\": false, \"message\": \"" + e.getMessage() + "\"}");
+            return;
+        }
+
+        JsonObject response = gson.toJsonTree(report).getAsJsonObject();
+        response.getAsJsonObject("totals").addProperty("customers", customers);
+        response.addProperty("success", true);
+        out.println(gson.toJson(response));
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static Long parseDate(String value) {
+        if (emptyToNull(value) == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Dates must be epoch milliseconds");
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.dicetrails.backend;
 
-import com.dicetrails.backend.model.Order;
 import com.dicetrails.backend.model.Product;
 import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.TrendingProducts;
 import com.google.gson.Gson;
 
 import javax.servlet.annotation.WebServlet;
@@ -11,12 +11,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.List;
 
 @WebServlet("/api/bestsellers")
 public class BestSellerServlet extends HttpServlet {
 
+    private static final int DEFAULT_LIMIT = 5;
+    private static final int MAX_LIMIT = 100;
+
     private final Gson gson = new Gson();
 
     @Override
@@ -26,54 +28,21 @@ public class BestSellerServlet extends HttpServlet {
         PrintWriter out = resp.getWriter();
 
         try {
-            List<Order> orders = DataManager.getInstance().getAllOrders();
-            List<Product> products = DataManager.getInstance().getAllProducts();
-
-            // Map product ID to sales count
-            Map<Integer, Integer> productSales = new HashMap<>();
-
-            for (Order order : orders) {
-                // Only count confirmed sales (e.g., exclude cancelled if you have such status,
-                // but for now we count all valid orders in the system or specifically
-                // Shipped/Completed)
-                // Assuming all orders in JSON are valid sales for now, or filter by status:
-                if (!"Cancelled".equals(order.getStatus())) {
-                    for (Map<String, Object> item : order.getItems()) {
-                        Object idObj = item.get("_id");
-                        int productId = 0;
-                        if (idObj instanceof Number) {
-                            productId = ((Number) idObj).intValue();
-                        } else if (idObj instanceof String) {
-                            try {
-                                productId = Integer.parseInt((String) idObj);
-                            } catch (NumberFormatException e) {
-                                continue;
-                            }
-                        }
-
-                        Object qtyObj = item.get("quantity");
-                        int quantity = 0;
-                        if (qtyObj instanceof Number) {
-                            quantity = ((Number) qtyObj).intValue();
-                        }
-
-                        if (productId > 0 && quantity > 0) {
-                            productSales.put(productId, productSales.getOrDefault(productId, 0) + quantity);
-                        }
-                    }
+            // Sales counts are maintained by DataManager as orders are placed, cancelled
+            // and deleted, so this only reads the top of the ranking
+            int limit = parseLimit(req.getParameter("limit"));
+            String windowParam = req.getParameter("window");
+            List<Product> bestSellers;
+            if (windowParam == null || windowParam.isEmpty() || "all".equalsIgnoreCase(windowParam)) {
+                bestSellers = DataManager.getInstance().getBestSellers(limit);
+            } else {
+                TrendingProducts.Window window = TrendingProducts.Window.fromParam(windowParam);
+                if (window == null) {
+                    out.println("{\"success\": false, \"message\": \"Unknown window, use 24h, 7d, 30d or all\"}");
+                    return;
                 }
+                bestSellers = DataManager.getInstance().getTrendingProducts(window, limit);
             }
-
-            // Sort products by sales count descending
-            List<Product> bestSellers = products.stream()
-                    .sorted((p1, p2) -> {
-                        int sales1 = productSales.getOrDefault(p1.get_id(), 0);
-                        int sales2 = productSales.getOrDefault(p2.get_id(), 0);
-                        return sales2 - sales1; // Descending
-                    })
-                    .limit(5)
-                    .collect(Collectors.toList());
-
             out.println(gson.toJson(bestSellers));
 
         } catch (Exception e) {
@@ -81,4 +50,15 @@ public class BestSellerServlet extends HttpServlet {
             out.println("{\"success\": false, \"message\": \"Failed to load best sellers\"}");
         }
     }
+
+    private static int parseLimit(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException e) {
+            return DEFAULT_LIMIT;
+        }
+    }
 }
@@ -12,7 +12,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.List;
+import java.util.Optional;
 
 @WebServlet("/api/cancel-order")
 public class CancelOrderServlet extends HttpServlet {
@@ -30,53 +30,24 @@ public class CancelOrderServlet extends HttpServlet {
             String orderId = jsonRequest.get("orderId").getAsString();
             String userId = jsonRequest.get("userId").getAsString();
 
-            // Get all orders
-            List<Order> allOrders = DataManager.getInstance().getAllOrders();
-
-            // Find and update the specific order
-            Order orderToCancel = null;
-            for (Order order : allOrders) {
-                if (order.getOrderId().equals(orderId) && order.getUserId().equals(userId)) {
-                    orderToCancel = order;
-
-                    // Only allow cancellation if order is not shipped or completed
-                    if ("Shipped".equals(order.getStatus()) || "Completed".equals(order.getStatus())) {
-                        out.println("{\"success\": false, \"message\": \"Cannot cancel shipped or completed orders\"}");
-                        return;
-                    }
-
-                    // Restore stock for each item in the order
-                    if (order.getItems() != null) {
-                        for (java.util.Map<String, Object> item : order.getItems()) {
-                            try {
-                                int productId = ((Number) item.get("_id")).intValue();
-                                int quantity = ((Number) item.get("quantity")).intValue();
-                                boolean stockRestored = DataManager.getInstance().increaseStock(productId, quantity);
-                                if (stockRestored) {
-                                    System.out.println("Restored stock for product " + productId + " by " + quantity);
-                                } else {
-                                    System.err.println("Failed to restore stock for product ID: " + productId);
-                                }
-                            } catch (Exception e) {
-                                System.err.println("Error restoring stock for item: " + e.getMessage());
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-
-                    // Update order status to Cancelled
-                    order.setStatus("Cancelled");
-                    break;
-                }
+            Optional<Order> orderOpt = DataManager.getInstance().getOrderById(orderId);
+            if (!orderOpt.isPresent() || !orderOpt.get().getUserId().equals(userId)) {
+                out.println("{\"success\": false, \"message\": \"Order not found\"}");
+                return;
             }
+            Order order = orderOpt.get();
 
-            if (orderToCancel == null) {
-                out.println("{\"success\": false, \"message\": \"Order not found\"}");
+            // Only allow cancellation if order is not shipped or completed
+            if ("Shipped".equals(order.getStatus()) || "Completed".equals(order.getStatus())) {
+                out.println("{\"success\": false, \"message\": \"Cannot cancel shipped or completed orders\"}");
                 return;
             }
 
-            // Save updated orders
-            DataManager.getInstance().saveOrders(allOrders);
+            // Update order status to Cancelled and restore the stock of its items
+            if (!DataManager.getInstance().cancelOrder(orderId)) {
+                out.println("{\"success\": false, \"message\": \"Order is already cancelled\"}");
+                return;
+            }
 
             out.println("{\"success\": true, \"message\": \"Order cancelled successfully\"}");
 
@@ -0,0 +1,139 @@
+package com.dicetrails.backend;
+
+import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.EntityTags;
+import com.dicetrails.backend.util.MediaBlobStore;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Serves review photos and videos from the media blob store: {@code /api/media/<blob id>}.
+ * Blobs never change (the ID is the content hash), so the ETag is the hash and clients may
+ * cache them forever. Single byte ranges are supported so videos can be seeked.
+ */
+@WebServlet("/api/media/*")
+public class MediaServlet extends HttpServlet {
+
+    // Tomcat's sendfile hand-off: the connector copies the file straight to the socket
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String blobId = req.getPathInfo() != null ? req.getPathInfo().substring(1) : null;
+        Path file = DataManager.getInstance().getMediaBlob(blobId);
+        if (file == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = "\"" + blobId.substring(0, blobId.indexOf('.')) + "\"";
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setContentType(MediaBlobStore.contentTypeOf(blobId));
+
+        if (EntityTags.matches(req.getHeader("If-None-Match"), etag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            long start = 0;
+            long end = length - 1;
+
+            String range = req.getHeader("Range");
+            String ifRange = req.getHeader("If-Range");
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                long[] parsed = parseRange(range, length);
+                if (parsed == null) {
+                    resp.setHeader("Content-Range", "bytes */" + length);
+                    resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                if (parsed.length == 2) {
+                    start = parsed[0];
+                    end = parsed[1];
+                    resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                }
+            }
+
+            long count = end - start + 1;
+            // Set as a header: setContentLengthLong is missing from the Servlet 3.0 container used by tomcat7:run
+            resp.setHeader("Content-Length", String.valueOf(count));
+            if ("HEAD".equals(req.getMethod()) || count == 0) {
+                return;
+            }
+
+            if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+                req.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                req.setAttribute(SENDFILE_START, start);
+                req.setAttribute(SENDFILE_END, end + 1);
+                return;
+            }
+
+            // No sendfile: let the channel move the bytes rather than looping over a heap buffer
+            WritableByteChannel out = Channels.newChannel(resp.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long sent = channel.transferTo(position, end + 1 - position, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+            resp.getOutputStream().flush();
+        }
+    }
+
+    /**
+     * @return {start, end} for a satisfiable single range, an empty array to ignore the
+     *         header (e.g. multiple ranges) and serve everything, or null if unsatisfiable
+     */
+    private static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.contains(",")) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+                end = Math.min(end, length - 1);
+            }
+            if (start >= length || start > end) {
+                return null;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
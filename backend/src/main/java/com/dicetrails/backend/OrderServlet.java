@@ -50,36 +50,17 @@ public class OrderServlet extends HttpServlet {
             newOrder.setStatus("Ready to ship");
             newOrder.setDate(System.currentTimeMillis());
 
-            DataManager.getInstance().saveOrder(newOrder);
-
-            // Reduce stock for each item in the order
-            if (newOrder.getItems() != null) {
-                for (java.util.Map<String, Object> item : newOrder.getItems()) {
-                    try {
-                        int productId = ((Number) item.get("_id")).intValue();
-                        int quantity = ((Number) item.get("quantity")).intValue();
-                        boolean stockReduced = DataManager.getInstance().reduceStock(productId, quantity);
-                        if (stockReduced) {
-                            System.out.println("Reduced stock for product " + productId + " by " + quantity);
-                        } else {
-                            System.err.println("Failed to reduce stock for product ID: " + productId);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Error reducing stock for item: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                }
-            }
-
-            // If newsletter discount was applied, mark it as used for this user
-            if (jsonRequest.has("newsletterDiscountApplied")
-                    && jsonRequest.get("newsletterDiscountApplied").getAsBoolean()) {
-
-                String userEmail = newOrder.getUserId();
-                DataManager.getInstance().getUserByEmail(userEmail).ifPresent(user -> {
-                    user.setHasUsedNewsletterDiscount(true);
-                    DataManager.getInstance().updateUser(user);
-                });
+            // Stock for every line, the order itself and the user's newsletter flag are
+            // checked and committed together, with one write per collection
+            try {
+                DataManager.getInstance().placeOrder(newOrder);
+            } catch (IllegalArgumentException e) {
+                // The message may quote a product name, so let Gson escape it
+                JsonObject failure = new JsonObject();
+                failure.addProperty("success", false);
+                failure.addProperty("message", e.getMessage());
+                out.println(gson.toJson(failure));
+                return;
             }
 
             out.println("{\"success\": true, \"message\": \"Order Placed\"}");
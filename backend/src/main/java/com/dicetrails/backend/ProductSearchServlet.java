@@ -0,0 +1,65 @@
+package com.dicetrails.backend;
+
+import com.dicetrails.backend.model.Product;
+import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.ProductSearchIndex;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Full-text product search: {@code /api/products/search?q=...&offset=0&limit=20}.
+ * Returns {@code {"total": n, "offset": o, "limit": l, "products": [...]}}, best match first.
+ */
+@WebServlet("/api/products/search")
+public class ProductSearchServlet extends HttpServlet {
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter out = resp.getWriter();
+
+        try {
+            String query = req.getParameter("q");
+            int offset = Math.max(0, parseInt(req.getParameter("offset"), 0));
+            int limit = Math.max(1, Math.min(MAX_LIMIT, parseInt(req.getParameter("limit"), DEFAULT_LIMIT)));
+
+            ProductSearchIndex.Result<Product> result = DataManager.getInstance()
+                    .searchProducts(query != null ? query : "", offset, limit);
+
+            JsonObject response = new JsonObject();
+            response.addProperty("total", result.getTotal());
+            response.addProperty("offset", offset);
+            response.addProperty("limit", limit);
+            response.add("products", gson.toJsonTree(result.getItems()));
+            out.println(gson.toJson(response));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            out.println("{\"success\": false, \"message\": \"Failed to search products\"}");
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -1,44 +1,141 @@
 package com.dicetrails.backend;
 
-import com.dicetrails.backend.model.Product;
 import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.ProductFacetIndex;
+import com.dicetrails.backend.util.ProductQuery;
+import com.dicetrails.backend.util.VersionedJsonCache;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @WebServlet("/api/products")
 public class ProductServlet extends HttpServlet {
 
+    // Any of these switches the response from the plain catalogue array to
+    // {"total": n, "products": [...], "facets": {facet: {value: count}}}
+    private static final List<String> FILTER_PARAMS = Arrays.asList("category", "subCategory", "minPrice",
+            "maxPrice", "discount", "isNew", "bestseller", "visibility", "offset", "limit");
+
     private final Gson gson = new Gson();
 
+    // Catalogue JSON rendered once per product-collection version
+    private final VersionedJsonCache catalogue = new VersionedJsonCache(
+            () -> DataManager.getInstance().getProductsVersion(),
+            () -> gson.toJson(DataManager.getInstance().getAllProducts()));
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setHeaders(resp);
+
+        try {
+            if (hasFilters(req)) {
+                ProductFacetIndex.Result result = DataManager.getInstance().filterProducts(toQuery(req));
+                JsonObject response = new JsonObject();
+                response.addProperty("total", result.getTotal());
+                response.add("products", gson.toJsonTree(result.getProducts()));
+                response.add("facets", gson.toJsonTree(result.getFacets()));
+                resp.setHeader("Cache-Control", "no-cache");
+                resp.getWriter().println(gson.toJson(response));
+            } else {
+                catalogue.send(req, resp);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (resp.isCommitted()) {
+                return; // Part of the body is already out; nothing valid can follow it
+            }
+            // The catalogue may have taken the output stream and set gzip headers already
+            resp.reset();
+            setHeaders(resp);
+            resp.getWriter().println("{\"success\": false, \"message\": \"Failed to load products\"}");
+        }
+    }
+
+    private static void setHeaders(HttpServletResponse resp) {
         // 1. ADD CORS HEADERS (Crucial for React connection)
         resp.setHeader("Access-Control-Allow-Origin", "*"); // Or "http://localhost:5173"
         resp.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
-        resp.setHeader("Access-Control-Allow-Headers", "Content-Type");
+        resp.setHeader("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
+        resp.setHeader("Access-Control-Expose-Headers", "ETag");
 
-        // 2. DISABLE CACHING (Crucial for "Live" updates)
-        resp.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
-        resp.setHeader("Pragma", "no-cache");
-        resp.setDateHeader("Expires", 0);
-        
+        // 2. JSON BODY (the catalogue adds its own ETag and Cache-Control, see VersionedJsonCache)
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
-        PrintWriter out = resp.getWriter();
+    }
 
+    private static boolean hasFilters(HttpServletRequest req) {
+        for (String param : FILTER_PARAMS) {
+            if (req.getParameter(param) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ProductQuery toQuery(HttpServletRequest req) {
+        ProductQuery query = new ProductQuery();
+        query.setCategories(listParam(req, "category"));
+        query.setSubCategories(listParam(req, "subCategory"));
+        query.setMinPrice(doubleParam(req.getParameter("minPrice")));
+        query.setMaxPrice(doubleParam(req.getParameter("maxPrice")));
+        query.setDiscounted(booleanParam(req.getParameter("discount")));
+        query.setIsNew(booleanParam(req.getParameter("isNew")));
+        query.setBestseller(booleanParam(req.getParameter("bestseller")));
+        String visibility = req.getParameter("visibility");
+        if ("visible".equalsIgnoreCase(visibility) || "hidden".equalsIgnoreCase(visibility)) {
+            query.setVisible("visible".equalsIgnoreCase(visibility));
+        }
+        Double offset = doubleParam(req.getParameter("offset"));
+        Double limit = doubleParam(req.getParameter("limit"));
+        if (offset != null) {
+            query.setOffset(Math.max(0, offset.intValue()));
+        }
+        if (limit != null) {
+            query.setLimit(Math.max(0, limit.intValue()));
+        }
+        return query;
+    }
+
+    // Accepts both repeated parameters (?category=a&category=b) and comma-separated values
+    private static List<String> listParam(HttpServletRequest req, String name) {
+        List<String> values = new ArrayList<>();
+        String[] raw = req.getParameterValues(name);
+        if (raw != null) {
+            for (String value : raw) {
+                for (String part : value.split(",")) {
+                    if (!part.trim().isEmpty()) {
+                        values.add(part.trim());
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private static Double doubleParam(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
         try {
-            List<Product> products = DataManager.getInstance().getAllProducts();
-            out.println(gson.toJson(products));
-        } catch (Exception e) {
-            e.printStackTrace();
-            out.println("{\"success\": false, \"message\": \"Failed to load products\"}");
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // "true"/"false" filter, anything else (e.g. "all") leaves the facet unfiltered
+    private static Boolean booleanParam(String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.valueOf(value);
         }
+        return null;
     }
 }
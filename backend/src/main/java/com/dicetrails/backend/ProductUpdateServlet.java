@@ -85,20 +85,11 @@ public class ProductUpdateServlet extends HttpServlet {
         try {
             int productId = jsonRequest.get("productId").getAsInt();
 
-            // Get all products and filter out the one to delete
-            var products = DataManager.getInstance().getAllProducts();
-            var filteredProducts = products.stream()
-                    .filter(p -> p.get_id() != productId)
-                    .toList();
-
-            if (filteredProducts.size() == products.size()) {
+            if (!DataManager.getInstance().deleteProduct(productId)) {
                 out.println("{\"success\": false, \"message\": \"Product not found\"}");
                 return;
             }
 
-            // Save the filtered list
-            DataManager.getInstance().saveProducts(filteredProducts);
-
             out.println("{\"success\": true, \"message\": \"Product deleted successfully\"}");
 
         } catch (Exception e) {
@@ -0,0 +1,39 @@
+package com.dicetrails.backend;
+
+import com.dicetrails.backend.util.DataManager;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Readiness probe: {@code {"ready": bool, "collections": {"users": "LOADED", ...}}}.
+ * Answers 503 while collections are still loading in the background, 200 once they have.
+ */
+@WebServlet("/api/ready")
+public class ReadinessServlet extends HttpServlet {
+
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        DataManager dataManager = DataManager.getInstance();
+        boolean ready = dataManager.isReady();
+
+        JsonObject response = new JsonObject();
+        response.addProperty("ready", ready);
+        response.add("collections", gson.toJsonTree(dataManager.getLoadStates()));
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+        if (!ready) {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        resp.getWriter().println(gson.toJson(response));
+    }
+}
@@ -1,8 +1,13 @@
 package com.dicetrails.backend;
 
 import com.dicetrails.backend.model.Review;
+import com.dicetrails.backend.model.ReviewMedia;
 import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.MediaBlobStore;
+import com.dicetrails.backend.util.ReviewQuery;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
@@ -13,12 +18,20 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 @WebServlet(urlPatterns = { "/api/reviews" })
 public class ReviewServlet extends HttpServlet {
 
+    private static final int MAX_PAGE_SIZE = 100;
+    // Bodies are parsed whole; base64 makes each upload a third larger than the file
+    private static final int MAX_BODY_SIZE = 4 * MediaBlobStore.MAX_SIZE;
+    // Any of these switches the response from the plain review array to
+    // {"total": n, "offset": o, "limit": l, "reviews": [...]}
+    private static final List<String> PAGING_PARAMS = Arrays.asList("sort", "offset", "limit", "hasMedia", "rating");
+
     private final Gson gson = new Gson();
 
     @Override
@@ -29,6 +42,18 @@ public class ReviewServlet extends HttpServlet {
         String productId = req.getParameter("productId");
         System.out.println("ReviewServlet GET: productId=" + productId);
 
+        if (isPaged(req)) {
+            ReviewQuery query = toQuery(req, productId);
+            ReviewQuery.Page page = DataManager.getInstance().findReviews(query);
+            JsonObject response = new JsonObject();
+            response.addProperty("total", page.getTotal());
+            response.addProperty("offset", query.getOffset());
+            response.addProperty("limit", query.getLimit());
+            response.add("reviews", withMediaUrls(page.getReviews(), req));
+            out.println(gson.toJson(response));
+            return;
+        }
+
         List<Review> reviews;
         if (productId == null || productId.trim().isEmpty()) {
             reviews = DataManager.getInstance().getAllReviews();
@@ -37,7 +62,75 @@ public class ReviewServlet extends HttpServlet {
         }
 
         System.out.println("ReviewServlet GET: returning " + reviews.size() + " reviews");
-        out.println(gson.toJson(reviews));
+        out.println(gson.toJson(withMediaUrls(reviews, req)));
+    }
+
+    private static boolean isPaged(HttpServletRequest req) {
+        for (String param : PAGING_PARAMS) {
+            if (req.getParameter(param) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ReviewQuery toQuery(HttpServletRequest req, String productId) {
+        ReviewQuery query = new ReviewQuery();
+        if (productId != null && !productId.trim().isEmpty()) {
+            query.setProductId(productId.trim());
+        }
+        query.setSort(ReviewQuery.Sort.fromParam(req.getParameter("sort")));
+        String hasMedia = req.getParameter("hasMedia");
+        if ("true".equalsIgnoreCase(hasMedia) || "false".equalsIgnoreCase(hasMedia)) {
+            query.setHasMedia(Boolean.valueOf(hasMedia));
+        }
+        Integer rating = parseInt(req.getParameter("rating"));
+        if (rating != null) {
+            query.setRating(rating);
+        }
+        Integer offset = parseInt(req.getParameter("offset"));
+        if (offset != null) {
+            query.setOffset(Math.max(0, offset));
+        }
+        Integer limit = parseInt(req.getParameter("limit"));
+        if (limit != null) {
+            query.setLimit(Math.max(1, Math.min(MAX_PAGE_SIZE, limit)));
+        }
+        return query;
+    }
+
+    private static Integer parseInt(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reviews only reference their media by blob ID; give the frontend a URL to load it from
+     * in each media item's "data" field, where inline media used to be.
+     */
+    private JsonArray withMediaUrls(List<Review> reviews, HttpServletRequest req) {
+        String mediaBase = req.getScheme() + "://" + req.getServerName() + ":" + req.getServerPort()
+                + req.getContextPath() + "/api/media/";
+        JsonArray array = gson.toJsonTree(reviews).getAsJsonArray();
+        for (JsonElement review : array) {
+            JsonElement media = review.getAsJsonObject().get("media");
+            if (media == null || !media.isJsonArray()) {
+                continue;
+            }
+            for (JsonElement item : media.getAsJsonArray()) {
+                JsonObject mediaItem = item.getAsJsonObject();
+                if (mediaItem.has("blob") && !mediaItem.has("data")) {
+                    mediaItem.addProperty("data", mediaBase + mediaItem.get("blob").getAsString());
+                }
+            }
+        }
+        return array;
     }
 
     @Override
@@ -45,6 +138,12 @@ public class ReviewServlet extends HttpServlet {
         resp.setContentType("application/json");
         PrintWriter out = resp.getWriter();
 
+        if (req.getContentLength() > MAX_BODY_SIZE) {
+            out.println(failure("Review is too large; media files must not be larger than "
+                    + MediaBlobStore.MAX_SIZE / (1024 * 1024) + " MB"));
+            return;
+        }
+
         try {
             BufferedReader reader = req.getReader();
             JsonObject jsonRequest = new JsonParser().parse(reader).getAsJsonObject();
@@ -55,7 +154,7 @@ public class ReviewServlet extends HttpServlet {
                 newReview.setId(UUID.randomUUID().toString());
             }
             if (newReview.getDate() == null) {
-                newReview.setDate(new java.util.Date().toString());
+                newReview.setDate(java.time.Instant.now().toString()); // ISO-8601, like the review forms send
             }
 
             // Ensure hasMedia matches media list presence
@@ -66,7 +165,20 @@ public class ReviewServlet extends HttpServlet {
             System.out.println(
                     "ReviewServlet POST: Adding review " + newReview.getId() + ", hasMedia=" + newReview.isHasMedia());
 
-            DataManager.getInstance().addReview(newReview);
+            // Tell the uploader what is wrong with a photo or video, rather than fail with a server error
+            try {
+                if (newReview.getMedia() != null) {
+                    for (ReviewMedia media : newReview.getMedia()) {
+                        if (media != null) {
+                            MediaBlobStore.validate(media);
+                        }
+                    }
+                }
+                DataManager.getInstance().addReview(newReview);
+            } catch (IllegalArgumentException e) {
+                out.println(failure(e.getMessage()));
+                return;
+            }
 
             if (newReview.getOrderId() != null && !newReview.getOrderId().isEmpty()) {
                 DataManager.getInstance().markOrderItemAsReviewed(newReview.getOrderId(), newReview.getProductId());
@@ -79,4 +191,12 @@ public class ReviewServlet extends HttpServlet {
             out.println("{\"success\": false, \"message\": \"Server Error: " + e.getMessage() + "\"}");
         }
     }
+
+    // The message may quote the posted content type, so let Gson escape it
+    private String failure(String message) {
+        JsonObject failure = new JsonObject();
+        failure.addProperty("success", false);
+        failure.addProperty("message", message);
+        return gson.toJson(failure);
+    }
 }
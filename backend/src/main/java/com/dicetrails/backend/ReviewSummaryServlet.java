@@ -0,0 +1,50 @@
+package com.dicetrails.backend;
+
+import com.dicetrails.backend.util.DataManager;
+import com.google.gson.Gson;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rating aggregates without the reviews themselves:
+ * {@code /api/reviews/summary?productId=X} returns one summary, and
+ * {@code /api/reviews/summary?productIds=X,Y,Z} returns {@code {X: summary, ...}} for catalogue tiles.
+ */
+@WebServlet("/api/reviews/summary")
+public class ReviewSummaryServlet extends HttpServlet {
+
+    private static final int MAX_BULK_IDS = 500;
+
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter out = resp.getWriter();
+
+        String productId = req.getParameter("productId");
+        String productIds = req.getParameter("productIds");
+
+        if (productIds != null) {
+            List<String> ids = new ArrayList<>();
+            for (String id : productIds.split(",")) {
+                if (!id.trim().isEmpty() && ids.size() < MAX_BULK_IDS) {
+                    ids.add(id.trim());
+                }
+            }
+            out.println(gson.toJson(DataManager.getInstance().getRatingSummaries(ids)));
+        } else if (productId != null && !productId.trim().isEmpty()) {
+            out.println(gson.toJson(DataManager.getInstance().getRatingSummary(productId.trim())));
+        } else {
+            out.println("{\"success\": false, \"message\": \"productId or productIds is required\"}");
+        }
+    }
+}
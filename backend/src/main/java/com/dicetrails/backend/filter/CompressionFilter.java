@@ -0,0 +1,466 @@
+package com.dicetrails.backend.filter;
+
+import com.dicetrails.backend.util.AcceptEncoding;
+import com.dicetrails.backend.util.DataManager;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses API responses with gzip or deflate, whichever the client's Accept-Encoding
+ * prefers. Bodies are held back until they pass {@link #MIN_SIZE}, so tiny responses go
+ * out as they are, and then compressed as they are written, so streamed responses stay
+ * streamed. Responses that already carry a Content-Encoding (the catalogue's own cache)
+ * and media files are left alone.
+ *
+ * GET endpoints whose output only depends on one collection are listed in
+ * {@link #VERSIONED}: their compressed bytes are kept per set of parameters and encoding, and served
+ * without running the servlet again until that collection's version changes.
+ *
+ * Mapped in web.xml after CorsFilter, so cached responses already carry the CORS headers.
+ */
+public class CompressionFilter implements Filter {
+
+    static final int MIN_SIZE = 1024;
+
+    // Compressed bodies larger than this are streamed but not kept
+    private static final int MAX_CACHED_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_CACHED_ENTRIES = 64;
+    private static final long MAX_CACHED_BYTES = 32 * 1024 * 1024; // Across all entries
+
+    /**
+     * A cacheable endpoint: the collection version its output depends on, and the request
+     * parameters it reads. Only those parameters go into the cache key; a request with
+     * any other parameter is compressed but never cached, so junk query strings cannot
+     * push out the useful entries.
+     */
+    private static final class Versioned {
+        final LongSupplier version;
+        final List<String> params;
+
+        Versioned(LongSupplier version, String... params) {
+            this.version = version;
+            this.params = Arrays.asList(params);
+        }
+    }
+
+    private static final Map<String, Versioned> VERSIONED = new HashMap<>();
+    static {
+        VERSIONED.put("/api/all-orders", new Versioned(() -> DataManager.getInstance().getOrdersVersion(),
+                "status", "region", "from", "to", "sort", "limit", "cursor"));
+        VERSIONED.put("/api/reviews", new Versioned(() -> DataManager.getInstance().getReviewsVersion(),
+                "productId", "sort", "hasMedia", "rating", "offset", "limit"));
+        VERSIONED.put("/api/reviews/summary", new Versioned(() -> DataManager.getInstance().getReviewsVersion(),
+                "productId", "productIds"));
+        VERSIONED.put("/api/products/search", new Versioned(() -> DataManager.getInstance().getProductsVersion(),
+                "q", "offset", "limit"));
+    }
+
+    private static final class Cached {
+        final long version;
+        final byte[] body;
+        final String encoding;
+        final String contentType;
+        final String cacheControl;
+
+        Cached(long version, byte[] body, String encoding, String contentType, String cacheControl) {
+            this.version = version;
+            this.body = body;
+            this.encoding = encoding;
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+        }
+    }
+
+    private final Map<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true); // Least recently used first
+    private long cachedBytes; // Guarded by cache
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String encoding = AcceptEncoding.negotiate(request.getHeader("Accept-Encoding"));
+        if (encoding == null || path.startsWith("/api/media/")) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        Versioned versioned = "GET".equals(request.getMethod()) ? VERSIONED.get(path) : null;
+        String key = versioned != null ? cacheKey(request, path, encoding, versioned) : null;
+        LongSupplier version = key != null ? versioned.version : null;
+        long current = 0;
+        if (version != null) {
+            current = version.getAsLong();
+            Cached hit;
+            synchronized (cache) {
+                hit = cache.get(key);
+            }
+            if (hit != null && hit.version == current) {
+                send(response, hit);
+                return;
+            }
+        }
+
+        CompressingResponse wrapped = new CompressingResponse(response, encoding, version != null);
+        chain.doFilter(req, wrapped);
+        wrapped.finish();
+
+        if (version != null) {
+            byte[] body = wrapped.getCompressedBody();
+            // Only keep it if nothing changed while rendering, as in VersionedJsonCache
+            if (body != null && version.getAsLong() == current) {
+                Cached entry = new Cached(current, body, encoding, wrapped.getContentType(),
+                        wrapped.getHeader("Cache-Control"));
+                store(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Key of a request from its known parameters in a fixed order, or null if it has
+     * parameters the endpoint does not read
+     */
+    private static String cacheKey(HttpServletRequest request, String path, String encoding, Versioned versioned) {
+        // Scheme and host are part of the key: review responses embed absolute media URLs
+        StringBuilder key = new StringBuilder(encoding).append(' ').append(request.getScheme()).append("://")
+                .append(request.getServerName()).append(':').append(request.getServerPort()).append(path);
+        for (String name : Collections.list(request.getParameterNames())) {
+            if (!versioned.params.contains(name)) {
+                return null;
+            }
+        }
+        for (String name : versioned.params) {
+            String value = request.getParameter(name);
+            if (value != null) {
+                key.append('&').append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return key.toString();
+    }
+
+    private void store(String key, Cached entry) {
+        synchronized (cache) {
+            Cached previous = cache.put(key, entry);
+            cachedBytes += entry.body.length - (previous != null ? previous.body.length : 0);
+            Iterator<Cached> eldest = cache.values().iterator();
+            while ((cachedBytes > MAX_CACHED_BYTES || cache.size() > MAX_CACHED_ENTRIES) && eldest.hasNext()) {
+                cachedBytes -= eldest.next().body.length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static void send(HttpServletResponse response, Cached cached) throws IOException {
+        response.setContentType(cached.contentType);
+        if (cached.cacheControl != null) {
+            response.setHeader("Cache-Control", cached.cacheControl);
+        }
+        response.setHeader("Content-Encoding", cached.encoding);
+        response.addHeader("Vary", "Accept-Encoding");
+        response.setContentLength(cached.body.length);
+        OutputStream out = response.getOutputStream();
+        out.write(cached.body);
+        out.flush();
+    }
+
+    private static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("application/json") || type.startsWith("text/")
+                || type.startsWith("application/javascript") || type.startsWith("application/xml");
+    }
+
+    /**
+     * Holds the body back until it is large enough to be worth compressing, then decides
+     * once, from the status and headers the servlet has set by then, whether to compress.
+     */
+    private static final class CompressingResponse extends HttpServletResponseWrapper {
+        private final String encoding;
+        private final boolean keepCopy;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(MIN_SIZE);
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+        private boolean decided;
+        private OutputStream target; // The real body stream once decided
+        private DeflaterOutputStream compressor;
+        private ByteArrayOutputStream copy;
+
+        CompressingResponse(HttpServletResponse response, String encoding, boolean keepCopy) {
+            super(response);
+            this.encoding = encoding;
+            this.keepCopy = keepCopy;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        // The length of the compressed body is not known up front; passed on only if left uncompressed
+        @Override
+        public void setContentLength(int len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = Long.parseLong(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = Long.parseLong(value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (decided) {
+                throw new IllegalStateException("Response body has already been sent");
+            }
+            pending.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            resetBuffer();
+            contentLength = -1;
+            // As on the container's response, either getWriter() or getOutputStream() may follow
+            stream = null;
+            writer = null;
+            super.reset();
+        }
+
+        // Once decided, part of the body is on its way out even if the container has not sent it yet
+        @Override
+        public boolean isCommitted() {
+            return decided || super.isCommitted();
+        }
+
+        /**
+         * The compressed body, if it was compressed, kept whole and the response was a 200
+         */
+        byte[] getCompressedBody() {
+            return copy != null && getStatus() == SC_OK ? copy.toByteArray() : null;
+        }
+
+        private ServletOutputStream stream() {
+            if (stream == null) {
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[] { (byte) b }, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (decided) {
+                            (compressor != null ? compressor : target).write(b, off, len);
+                            return;
+                        }
+                        pending.write(b, off, len);
+                        if (pending.size() >= MIN_SIZE) {
+                            decide();
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        if (target != null) {
+                            target.flush();
+                        }
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+            return stream;
+        }
+
+        private void decide() throws IOException {
+            decided = true;
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            boolean compress = !response.containsHeader("Content-Encoding")
+                    && response.getStatus() == SC_OK && isCompressible(response.getContentType());
+            if (!compress) {
+                if (contentLength >= 0) {
+                    response.setHeader("Content-Length", String.valueOf(contentLength));
+                }
+                target = response.getOutputStream();
+                pending.writeTo(target);
+                return;
+            }
+
+            response.setHeader("Content-Encoding", encoding);
+            response.addHeader("Vary", "Accept-Encoding");
+            String etag = response.getHeader("ETag");
+            if (etag != null) {
+                response.setHeader("ETag", AcceptEncoding.etagFor(etag, encoding));
+            }
+            target = response.getOutputStream();
+            if (keepCopy) {
+                copy = new ByteArrayOutputStream(Math.max(MIN_SIZE, pending.size() / 4));
+                target = new TeeStream(target);
+            }
+            // Cached bodies are compressed once per version, so they get the better ratio
+            int level = keepCopy ? Deflater.BEST_COMPRESSION : Deflater.DEFAULT_COMPRESSION;
+            if ("gzip".equals(encoding)) {
+                compressor = new GZIPOutputStream(target, 8192) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            } else {
+                // HTTP "deflate" is the zlib format, which is what DeflaterOutputStream writes
+                compressor = new DeflaterOutputStream(target, new Deflater(level), 8192) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            def.end(); // Only ended by close() when the stream created it
+                        }
+                    }
+                };
+            }
+            pending.writeTo(compressor);
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (!decided) {
+                // Too small to be worth compressing
+                decided = true;
+                if (pending.size() > 0) {
+                    getResponse().setContentLength(pending.size());
+                    target = getResponse().getOutputStream();
+                    pending.writeTo(target);
+                } else if (contentLength >= 0) {
+                    ((HttpServletResponse) getResponse()).setHeader("Content-Length", String.valueOf(contentLength));
+                }
+            }
+            if (compressor != null) {
+                // Also releases the deflater's native memory
+                compressor.close();
+            } else if (target != null) {
+                target.flush();
+            }
+        }
+
+        /**
+         * Writes the compressed bytes to the client and into the cache copy, dropping
+         * the copy once it grows past the cacheable size
+         */
+        private final class TeeStream extends OutputStream {
+            private final OutputStream out;
+
+            TeeStream(OutputStream out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                if (copy != null) {
+                    if (copy.size() + len > MAX_CACHED_SIZE) {
+                        copy = null;
+                    } else {
+                        copy.write(b, off, len);
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
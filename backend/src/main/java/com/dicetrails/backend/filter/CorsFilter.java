@@ -1,11 +1,9 @@
 package com.dicetrails.backend.filter;
 
 import javax.servlet.*;
-import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
-@WebFilter("/*")
 public class CorsFilter implements Filter {
 
     @Override
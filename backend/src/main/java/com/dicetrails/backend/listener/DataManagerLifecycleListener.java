@@ -0,0 +1,45 @@
+package com.dicetrails.backend.listener;
+
+import com.dicetrails.backend.util.DataManager;
+import com.dicetrails.backend.util.PersistenceConfig;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+@WebListener
+public class DataManagerLifecycleListener implements ServletContextListener {
+
+    private static final String[] CONFIG_PARAMS = {
+            PersistenceConfig.MODE_PROPERTY,
+            PersistenceConfig.DURABILITY_PROPERTY,
+            PersistenceConfig.FLUSH_INTERVAL_PROPERTY,
+            PersistenceConfig.WAL_COMPACT_THRESHOLD_PROPERTY,
+            PersistenceConfig.WAL_COMPACT_INTERVAL_PROPERTY,
+            PersistenceConfig.MEDIA_DIR_PROPERTY,
+            PersistenceConfig.SNAPSHOT_FORMAT_PROPERTY
+    };
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+
+        // web.xml context-params act as defaults; -D system properties take precedence
+        for (String name : CONFIG_PARAMS) {
+            String value = context.getInitParameter(name);
+            if (value != null && System.getProperty(name) == null) {
+                System.setProperty(name, value);
+            }
+        }
+
+        // Start loading the collections in the background now rather than on the first request
+        DataManager.getInstance();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        // Write out anything the write-behind scheduler is still holding
+        DataManager.shutdownInstance();
+    }
+}
@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Map;
 
 public class Order {
+    public static final String CANCELLED = "Cancelled";
+
     private String orderId;
 
     private String userId;
@@ -25,13 +27,20 @@ public class Order {
     private String region; // Delivery region (west, east, international)
     private String voucherCode; // Voucher code applied to this order
 
-    private List<Map<String, Object>> items;
+    private List<OrderItem> items;
 
     public Order() {
     }
 
+    /**
+     * Whether a status is the cancelled one. Statuses are typed in by admins, so case is ignored.
+     */
+    public static boolean isCancelled(String status) {
+        return CANCELLED.equalsIgnoreCase(status);
+    }
+
     public Order(String userId, Map<String, String> deliveryAddress, String paymentMethod,
-            double totalAmount, List<Map<String, Object>> items) {
+            double totalAmount, List<OrderItem> items) {
         this.userId = userId;
         this.deliveryAddress = deliveryAddress;
         this.paymentMethod = paymentMethod;
@@ -105,11 +114,11 @@ public class Order {
         this.trackingNumber = trackingNumber;
     }
 
-    public List<Map<String, Object>> getItems() {
+    public List<OrderItem> getItems() {
         return items;
     }
 
-    public void setItems(List<Map<String, Object>> items) {
+    public void setItems(List<OrderItem> items) {
         this.items = items;
     }
 
@@ -0,0 +1,195 @@
+package com.dicetrails.backend.model;
+
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.internal.bind.TypeAdapters;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One line of an order. The checkout page posts a copy of the whole product with the
+ * cart quantity, so fields the server never reads (description, category, ...) are
+ * kept as raw JSON in {@code extra} and written back unchanged.
+ */
+@JsonAdapter(OrderItem.Adapter.class)
+public class OrderItem {
+    private int productId;
+    private int quantity;
+    private double price; // Unit price before discount
+    private double discount; // Percentage off at the time of the order
+    private boolean reviewed;
+    private String name;
+    private JsonElement image; // A URL or an array of URLs, as the product had it
+    private Map<String, JsonElement> extra;
+
+    public OrderItem() {
+    }
+
+    public OrderItem(int productId, int quantity, double price) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    public double getDiscount() {
+        return discount;
+    }
+
+    public void setDiscount(double discount) {
+        this.discount = discount;
+    }
+
+    public boolean isReviewed() {
+        return reviewed;
+    }
+
+    public void setReviewed(boolean reviewed) {
+        this.reviewed = reviewed;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Parses a product ID as it appears in requests and older snapshots: "42", "42.0"
+     * or "4.2E1"; returns 0 for anything else
+     */
+    public static int parseProductId(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return (int) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the product ID from {@code _id}, or from {@code id}/{@code productId} as some
+     * older orders have it, as a number or a string. Writes {@code _id} as an integer,
+     * so the frontend's {@code item._id === product._id} holds.
+     */
+    public static class Adapter extends TypeAdapter<OrderItem> {
+
+        @Override
+        public void write(JsonWriter out, OrderItem item) throws IOException {
+            if (item == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("_id").value(item.productId);
+            if (item.name != null) {
+                out.name("name").value(item.name);
+            }
+            out.name("price").value(item.price);
+            out.name("quantity").value(item.quantity);
+            if (item.discount != 0) {
+                out.name("discount").value(item.discount);
+            }
+            if (item.image != null) {
+                out.name("image");
+                TypeAdapters.JSON_ELEMENT.write(out, item.image);
+            }
+            if (item.reviewed) {
+                out.name("isReviewed").value(true);
+            }
+            if (item.extra != null) {
+                for (Map.Entry<String, JsonElement> field : item.extra.entrySet()) {
+                    out.name(field.getKey());
+                    TypeAdapters.JSON_ELEMENT.write(out, field.getValue());
+                }
+            }
+            out.endObject();
+        }
+
+        @Override
+        public OrderItem read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            OrderItem item = new OrderItem();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "_id":
+                    case "id":
+                    case "productId":
+                        int productId = parseProductId(in.nextString());
+                        if (item.productId == 0) {
+                            item.productId = productId;
+                        }
+                        break;
+                    case "quantity":
+                        item.quantity = (int) in.nextDouble();
+                        break;
+                    case "price":
+                        item.price = in.nextDouble();
+                        break;
+                    case "discount":
+                        item.discount = in.nextDouble();
+                        break;
+                    case "isReviewed":
+                        item.reviewed = in.peek() == JsonToken.BOOLEAN ? in.nextBoolean()
+                                : Boolean.parseBoolean(in.nextString());
+                        break;
+                    case "name":
+                        item.name = in.nextString();
+                        break;
+                    case "image":
+                        item.image = TypeAdapters.JSON_ELEMENT.read(in);
+                        break;
+                    default:
+                        if (item.extra == null) {
+                            item.extra = new LinkedHashMap<>();
+                        }
+                        item.extra.put(name, TypeAdapters.JSON_ELEMENT.read(in));
+                }
+            }
+            in.endObject();
+            return item;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.dicetrails.backend.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * A photo or video attached to a review. Uploaded content lives in the media blob
+ * store and the review only keeps its blob ID; {@code data} is only set while an upload
+ * is still inline (a base64 data URL as posted by the review forms) or for external URLs.
+ */
+@JsonAdapter(ReviewMedia.Adapter.class)
+public class ReviewMedia {
+    private String type; // "image" or "video"
+    private String blob;
+    private String contentType;
+    private long size;
+    private String data;
+
+    public ReviewMedia() {
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getBlob() {
+        return blob;
+    }
+
+    public void setBlob(String blob) {
+        this.blob = blob;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public void setData(String data) {
+        this.data = data;
+    }
+
+    /**
+     * Accepts both shapes the frontend posts: {@code {"type": "image", "data": "data:..."}}
+     * from the product page and a bare data URL string from the order review page.
+     */
+    public static class Adapter extends TypeAdapter<ReviewMedia> {
+
+        @Override
+        public void write(JsonWriter out, ReviewMedia media) throws IOException {
+            if (media == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("type").value(media.type);
+            if (media.blob != null) {
+                out.name("blob").value(media.blob);
+                out.name("contentType").value(media.contentType);
+                out.name("size").value(media.size);
+            }
+            if (media.data != null) {
+                out.name("data").value(media.data);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public ReviewMedia read(JsonReader in) throws IOException {
+            ReviewMedia media = new ReviewMedia();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            if (in.peek() == JsonToken.STRING) {
+                media.data = in.nextString();
+                media.type = media.data.startsWith("data:video") ? "video" : "image";
+                return media;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "type":
+                        media.type = in.nextString();
+                        break;
+                    case "blob":
+                        media.blob = in.nextString();
+                        break;
+                    case "contentType":
+                        media.contentType = in.nextString();
+                        break;
+                    case "size":
+                        media.size = in.nextLong();
+                        break;
+                    case "data":
+                        media.data = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return media;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.dicetrails.backend.util;
+
+import java.util.Locale;
+
+/**
+ * Reads an Accept-Encoding header with its q-values, so "gzip;q=0" counts as refusing gzip.
+ */
+public class AcceptEncoding {
+
+    private AcceptEncoding() {
+    }
+
+    /**
+     * The q-value the header gives {@code coding} ("gzip" also matches "x-gzip"), falling
+     * back to "*" when the coding is not listed; 0 if the client does not accept it
+     */
+    public static double quality(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return 0;
+        }
+        double listed = -1; // -1: not listed
+        double wildcard = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ROOT);
+            if (name.equals("x-gzip")) {
+                name = "gzip";
+            }
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals(coding)) {
+                listed = q;
+            } else if (name.equals("*")) {
+                wildcard = q;
+            }
+        }
+        return listed >= 0 ? listed : wildcard;
+    }
+
+    /**
+     * The ETag of {@code etag}'s content sent with {@code coding}, e.g. "abc" becomes
+     * "abc-gzip": strong ETags must differ between encodings of the same content. Weak
+     * ETags and uncompressed responses ({@code coding} null) keep the tag as it is.
+     */
+    public static String etagFor(String etag, String coding) {
+        if (coding == null || etag.startsWith("W/") || !etag.endsWith("\"")) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + "-" + coding + "\"";
+    }
+
+    /**
+     * "gzip" or "deflate", preferring the higher q-value and gzip on a tie; null if the
+     * client accepts neither
+     */
+    public static String negotiate(String acceptEncoding) {
+        double gzip = quality(acceptEncoding, "gzip");
+        double deflate = quality(acceptEncoding, "deflate");
+        if (gzip > 0 && gzip >= deflate) {
+            return "gzip";
+        }
+        return deflate > 0 ? "deflate" : null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.dicetrails.backend.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+/**
+ * All-time units sold per product, kept in ranked order. Updates are O(log n)
+ * and reading the top K products is O(K), independent of the order history.
+ */
+public class BestSellerRanking {
+
+    private static final class Entry {
+        final int productId;
+        int unitsSold;
+
+        Entry(int productId) {
+            this.productId = productId;
+        }
+    }
+
+    // Most units sold first, ties broken by product ID so the order is stable
+    private static final Comparator<Entry> RANK_ORDER = (a, b) -> a.unitsSold != b.unitsSold
+            ? Integer.compare(b.unitsSold, a.unitsSold)
+            : Integer.compare(a.productId, b.productId);
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(RANK_ORDER);
+
+    /**
+     * Add (or, with a negative quantity, take back) units sold for a product
+     */
+    public synchronized void record(int productId, int quantity) {
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            entry = new Entry(productId);
+            entries.put(productId, entry);
+        } else {
+            ranking.remove(entry); // Re-inserted below at its new position
+        }
+        entry.unitsSold += quantity;
+        if (entry.unitsSold > 0) {
+            ranking.add(entry);
+        } else {
+            entries.remove(productId);
+        }
+    }
+
+    public synchronized int unitsSold(int productId) {
+        Entry entry = entries.get(productId);
+        return entry != null ? entry.unitsSold : 0;
+    }
+
+    /**
+     * Product IDs in rank order, best seller first, skipping IDs the filter rejects
+     * (e.g. deleted products). Stops as soon as enough IDs have been collected.
+     */
+    public synchronized List<Integer> topProductIds(int limit, IntPredicate include) {
+        List<Integer> result = new ArrayList<>(Math.min(limit, ranking.size()));
+        Iterator<Entry> it = ranking.iterator();
+        while (it.hasNext() && result.size() < limit) {
+            int productId = it.next().productId;
+            if (include.test(productId)) {
+                result.add(productId);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        ranking.clear();
+    }
+}
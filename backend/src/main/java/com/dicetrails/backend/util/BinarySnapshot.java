@@ -0,0 +1,671 @@
+package com.dicetrails.backend.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary encoding of a collection snapshot, loaded much faster than the
+ * pretty-printed JSON files and with far fewer allocations.
+ *
+ * Records are encoded as the same token stream Gson would write as JSON (so the model
+ * classes and their adapters need no binary-specific code), but names and strings are
+ * replaced by indexes into a string table stored once per file. Loading decodes every
+ * distinct string once and shares it between records: the thousands of orders with the
+ * same status, region or user ID all point at one String.
+ *
+ * Layout: magic, format version, {@link Source} of the JSON file next to it (size, CRC32,
+ * same-records flag), string table (count, then length-prefixed UTF-8), record count,
+ * length-prefixed records, CRC32 of everything before it. Version 1 files, without the
+ * source, are still read.
+ */
+public class BinarySnapshot {
+
+    private static final int MAGIC = 0x44545331; // "DTS1"
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1; // No source in the header
+    private static final int SOURCE_SIZE = 17;
+
+    // Token tags
+    private static final byte BEGIN_OBJECT = 1;
+    private static final byte END_OBJECT = 2;
+    private static final byte BEGIN_ARRAY = 3;
+    private static final byte END_ARRAY = 4;
+    private static final byte NAME = 5;
+    private static final byte STRING = 6;
+    private static final byte LONG = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte TRUE = 9;
+    private static final byte FALSE = 10;
+    private static final byte NULL = 11;
+
+    private static final Gson GSON = new GsonBuilder().registerTypeAdapterFactory(new StringKeyedMaps()).create();
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * The JSON snapshot a binary snapshot was written next to, identified by its size and
+     * CRC32 rather than its modification time, and whether the JSON holds the same records
+     * (both formats written together) or is an older file left in place (binary only).
+     * A load can then tell whether the JSON was changed or replaced since.
+     */
+    public static final class Source {
+        public static final Source NONE = new Source(-1, 0, false); // No JSON file
+
+        private final long size;
+        private final long crc;
+        private final boolean sameRecords;
+
+        public Source(long size, long crc, boolean sameRecords) {
+            this.size = size;
+            this.crc = crc;
+            this.sameRecords = sameRecords;
+        }
+
+        /**
+         * Read the JSON file's stamp, or {@link #NONE} if it does not exist
+         */
+        public static Source of(Path json, boolean sameRecords) throws IOException {
+            if (!Files.exists(json)) {
+                return NONE;
+            }
+            return new Source(Files.size(json), checksum(json), sameRecords);
+        }
+
+        public Source withSameRecords(boolean sameRecords) {
+            return new Source(size, crc, sameRecords);
+        }
+
+        /**
+         * True if the JSON file is still the one this stamp was taken from; only reads the
+         * file when the size matches
+         */
+        public boolean matches(Path json) throws IOException {
+            if (!Files.exists(json)) {
+                return size < 0;
+            }
+            return size == Files.size(json) && crc == checksum(json);
+        }
+
+        public boolean hasSameRecords() {
+            return sameRecords;
+        }
+
+        private static long checksum(Path file) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+            return crc.getValue();
+        }
+    }
+
+    /**
+     * The source recorded in a snapshot's header, or null for a version 1 snapshot that
+     * has none. Only reads the header; the checksum is verified by {@link #read}.
+     */
+    public static Source readSource(Path file) throws IOException {
+        byte[] head = new byte[5 + SOURCE_SIZE];
+        int read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = in.readNBytes(head, 0, head.length);
+        }
+        if (read < 5 || readInt(head, 0) != MAGIC) {
+            throw new IOException(file + " is not a binary snapshot");
+        }
+        if (head[4] == LEGACY_VERSION) {
+            return null;
+        }
+        if (head[4] != VERSION || read < head.length) {
+            throw new IOException(file + " has unsupported snapshot version " + head[4]);
+        }
+        return new Source(readLong(head, 5), readLong(head, 13), head[21] != 0);
+    }
+
+    public static void write(List<?> records, Source source, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Object record : records) {
+            encoder.record.reset();
+            GSON.toJson(record, record.getClass(), encoder);
+            writeVarint(body, encoder.record.size());
+            encoder.record.writeTo(body);
+        }
+
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(source.size);
+        data.writeLong(source.crc);
+        data.writeBoolean(source.sameRecords);
+        writeVarint(header, encoder.strings.size());
+        for (String string : encoder.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(header, bytes.length);
+            header.write(bytes);
+        }
+        writeVarint(header, records.size());
+
+        byte[] head = header.toByteArray();
+        crc.update(head);
+        out.write(head);
+        // Not toByteArray(): the body can be large, so avoid copying it
+        body.writeTo(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                crc.update(b);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                crc.update(b, off, len);
+                out.write(b, off, len);
+            }
+        });
+        new DataOutputStream(out).writeInt((int) crc.getValue());
+    }
+
+    /**
+     * @throws IOException if the file is not a snapshot of this version, fails its
+     *         checksum or holds a record that does not decode into the element type
+     */
+    public static <T> List<T> read(Path file, Class<T> elementType) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < 9 || readInt(bytes, 0) != MAGIC) {
+            throw new IOException(file + " is not a binary snapshot");
+        }
+        if (bytes[4] != VERSION && bytes[4] != LEGACY_VERSION) {
+            throw new IOException(file + " has unsupported snapshot version " + bytes[4]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != readInt(bytes, bytes.length - 4)) {
+            throw new IOException(file + " is corrupt (checksum mismatch)");
+        }
+
+        Decoder decoder = new Decoder(bytes, bytes.length - 4);
+        decoder.pos = bytes[4] == LEGACY_VERSION ? 5 : 5 + SOURCE_SIZE;
+        String[] strings = new String[(int) decoder.readVarint()];
+        for (int i = 0; i < strings.length; i++) {
+            int length = (int) decoder.readVarint();
+            strings[i] = new String(bytes, decoder.pos, length, StandardCharsets.UTF_8);
+            decoder.pos += length;
+        }
+        decoder.strings = strings;
+
+        int count = (int) decoder.readVarint();
+        List<T> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = (int) decoder.readVarint();
+            int end = decoder.pos + length;
+            decoder.limit = end;
+            try {
+                records.add(GSON.fromJson(decoder, elementType));
+            } catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+                throw new IOException("Record " + i + " of " + file + " could not be read", e);
+            }
+            if (decoder.pos != end) {
+                throw new IOException("Record " + i + " of " + file + " was not fully read");
+            }
+        }
+        return records;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return (long) readInt(bytes, offset) << 32 | (readInt(bytes, offset + 4) & 0xffffffffL);
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Receives Gson's JSON tokens and writes them in binary form into {@link #record}
+     */
+    private static final class Encoder extends JsonWriter {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private String deferredName;
+
+        Encoder() {
+            super(new CharArrayWriter(0)); // Never written to
+        }
+
+        private void writeString(byte tag, String value) throws IOException {
+            Integer id = stringIds.get(value);
+            if (id == null) {
+                id = strings.size();
+                stringIds.put(value, id);
+                strings.add(value);
+            }
+            record.write(tag);
+            writeVarint(record, id);
+        }
+
+        // Names are held back like in JsonWriter, so null fields are dropped with their name
+        private void writeDeferredName() throws IOException {
+            if (deferredName != null) {
+                writeString(NAME, deferredName);
+                deferredName = null;
+            }
+        }
+
+        private JsonWriter token(byte tag) throws IOException {
+            writeDeferredName();
+            record.write(tag);
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            return token(BEGIN_OBJECT);
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            return token(END_OBJECT);
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            return token(BEGIN_ARRAY);
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            return token(END_ARRAY);
+        }
+
+        @Override
+        public JsonWriter name(String name) {
+            if (name == null) {
+                throw new NullPointerException("name == null");
+            }
+            deferredName = name;
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            if (deferredName != null && !getSerializeNulls()) {
+                deferredName = null;
+                return this;
+            }
+            return token(NULL);
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            writeDeferredName();
+            writeString(STRING, value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter jsonValue(String value) {
+            throw new UnsupportedOperationException("Raw JSON values cannot be stored in a binary snapshot");
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            return token(value ? TRUE : FALSE);
+        }
+
+        @Override
+        public JsonWriter value(Boolean value) throws IOException {
+            return value == null ? nullValue() : value(value.booleanValue());
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            token(DOUBLE);
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                record.write((int) (bits >>> shift));
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            token(LONG);
+            writeVarint(record, (value << 1) ^ (value >> 63)); // Zigzag, so small negatives stay short
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return value(value.doubleValue());
+            }
+            // Integers, and numbers Gson kept unparsed (e.g. values of untyped maps)
+            try {
+                return value(Long.parseLong(value.toString()));
+            } catch (NumberFormatException e) {
+                return value(value.doubleValue());
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Replays one record's tokens to Gson. Reused for all records of a file.
+     */
+    private static final class Decoder extends JsonReader {
+        private final byte[] bytes;
+        String[] strings;
+        int pos;
+        int limit;
+
+        Decoder(byte[] bytes, int limit) {
+            super(new StringReader("")); // Never read from
+            this.bytes = bytes;
+            this.limit = limit;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private byte tag() {
+            return pos < limit ? bytes[pos] : 0;
+        }
+
+        private void expect(byte tag, String expected) {
+            if (tag() != tag) {
+                throw new IllegalStateException("Expected " + expected + " but was " + peek() + " at byte " + pos);
+            }
+            pos++;
+        }
+
+        @Override
+        public JsonToken peek() {
+            switch (tag()) {
+                case BEGIN_OBJECT:
+                    return JsonToken.BEGIN_OBJECT;
+                case END_OBJECT:
+                    return JsonToken.END_OBJECT;
+                case BEGIN_ARRAY:
+                    return JsonToken.BEGIN_ARRAY;
+                case END_ARRAY:
+                    return JsonToken.END_ARRAY;
+                case NAME:
+                    return JsonToken.NAME;
+                case STRING:
+                    return JsonToken.STRING;
+                case LONG:
+                case DOUBLE:
+                    return JsonToken.NUMBER;
+                case TRUE:
+                case FALSE:
+                    return JsonToken.BOOLEAN;
+                case NULL:
+                    return JsonToken.NULL;
+                default:
+                    return JsonToken.END_DOCUMENT;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            byte tag = tag();
+            return tag != END_OBJECT && tag != END_ARRAY && tag != 0;
+        }
+
+        @Override
+        public void beginObject() {
+            expect(BEGIN_OBJECT, "BEGIN_OBJECT");
+        }
+
+        @Override
+        public void endObject() {
+            expect(END_OBJECT, "END_OBJECT");
+        }
+
+        @Override
+        public void beginArray() {
+            expect(BEGIN_ARRAY, "BEGIN_ARRAY");
+        }
+
+        @Override
+        public void endArray() {
+            expect(END_ARRAY, "END_ARRAY");
+        }
+
+        @Override
+        public String nextName() {
+            expect(NAME, "a name");
+            return strings[(int) readVarint()];
+        }
+
+        @Override
+        public String nextString() {
+            switch (tag()) {
+                case STRING:
+                    pos++;
+                    return strings[(int) readVarint()];
+                case LONG:
+                    return Long.toString(nextLong());
+                case DOUBLE:
+                    return Double.toString(nextDouble());
+                default:
+                    throw new IllegalStateException("Expected a string but was " + peek() + " at byte " + pos);
+            }
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            byte tag = tag();
+            if (tag != TRUE && tag != FALSE) {
+                throw new IllegalStateException("Expected a boolean but was " + peek() + " at byte " + pos);
+            }
+            pos++;
+            return tag == TRUE;
+        }
+
+        @Override
+        public void nextNull() {
+            expect(NULL, "null");
+        }
+
+        @Override
+        public double nextDouble() {
+            switch (tag()) {
+                case DOUBLE:
+                    pos++;
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = bits << 8 | (bytes[pos++] & 0xff);
+                    }
+                    return Double.longBitsToDouble(bits);
+                case LONG:
+                    return nextLong();
+                case STRING:
+                    return Double.parseDouble(nextString());
+                default:
+                    throw new IllegalStateException("Expected a double but was " + peek() + " at byte " + pos);
+            }
+        }
+
+        @Override
+        public long nextLong() {
+            switch (tag()) {
+                case LONG:
+                    pos++;
+                    long zigzag = readVarint();
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                case DOUBLE:
+                    double value = nextDouble();
+                    if (value != (long) value) {
+                        throw new NumberFormatException("Expected a long but was " + value);
+                    }
+                    return (long) value;
+                case STRING:
+                    return Long.parseLong(nextString());
+                default:
+                    throw new IllegalStateException("Expected a long but was " + peek() + " at byte " + pos);
+            }
+        }
+
+        @Override
+        public int nextInt() {
+            long value = nextLong();
+            if (value != (int) value) {
+                throw new NumberFormatException("Expected an int but was " + value);
+            }
+            return (int) value;
+        }
+
+        @Override
+        public void skipValue() {
+            int depth = 0;
+            do {
+                byte tag = bytes[pos++];
+                switch (tag) {
+                    case BEGIN_OBJECT:
+                    case BEGIN_ARRAY:
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        depth--;
+                        break;
+                    case NAME:
+                    case STRING:
+                    case LONG:
+                        readVarint();
+                        break;
+                    case DOUBLE:
+                        pos += 8;
+                        break;
+                    default:
+                        break;
+                }
+            } while (depth > 0);
+        }
+
+        @Override
+        public String getPath() {
+            return "$";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Gson's own map adapter reaches into JsonReader internals the decoder does not
+     * have, so maps with String keys (all the models use) are handled here instead.
+     */
+    private static final class StringKeyedMaps implements TypeAdapterFactory {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (!(type.getType() instanceof ParameterizedType)
+                    || !type.getRawType().isAssignableFrom(LinkedHashMap.class)) {
+                return null;
+            }
+            Type[] arguments = ((ParameterizedType) type.getType()).getActualTypeArguments();
+            if (arguments.length != 2 || arguments[0] != String.class) {
+                return null;
+            }
+            TypeAdapter<Object> values = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(arguments[1]));
+            return (TypeAdapter<T>) new TypeAdapter<Map<String, Object>>() {
+                @Override
+                public void write(JsonWriter out, Map<String, Object> map) throws IOException {
+                    if (map == null) {
+                        out.nullValue();
+                        return;
+                    }
+                    out.beginObject();
+                    for (Map.Entry<String, Object> entry : map.entrySet()) {
+                        out.name(String.valueOf(entry.getKey()));
+                        values.write(out, entry.getValue());
+                    }
+                    out.endObject();
+                }
+
+                @Override
+                public Map<String, Object> read(JsonReader in) throws IOException {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        return null;
+                    }
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        map.put(in.nextName(), values.read(in));
+                    }
+                    in.endObject();
+                    return map;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.dicetrails.backend.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read/write lock guarding one DataManager collection, usable with try-with-resources:
+ *
+ * <pre>
+ * try (CollectionLock.Guard guard = usersLock.read()) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * Writers may take the read lock while holding the write lock, but not the other way round.
+ * Methods that lock more than one collection take them in the order the fields are declared
+ * in DataManager (users, orders, products, contacts, reviews, vouchers).
+ *
+ * A lock can also gate the loading of its collection: once a loader is set, the first
+ * acquisition runs it (unless a background thread already has) and every acquisition
+ * waits until it has finished. The loader runs under the write lock, so it may itself
+ * use the collection's locking methods.
+ */
+public class CollectionLock {
+
+    public interface Guard extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public enum State {
+        PENDING, // Not requested yet
+        LOADING,
+        LOADED,
+        FAILED
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile State state = State.LOADED;
+    private volatile FutureTask<Void> loader;
+
+    public Guard read() {
+        awaitLoaded();
+        return acquire(lock.readLock());
+    }
+
+    public Guard write() {
+        awaitLoaded();
+        return acquire(lock.writeLock());
+    }
+
+    /**
+     * Gate every acquisition on {@code load}, which fills the collection
+     */
+    public void setLoader(Runnable load) {
+        loader = new FutureTask<>(() -> {
+            state = State.LOADING;
+            try (Guard guard = acquire(lock.writeLock())) {
+                load.run();
+                state = State.LOADED;
+            } catch (RuntimeException | Error e) {
+                state = State.FAILED;
+                throw e;
+            }
+        }, null);
+        state = State.PENDING;
+    }
+
+    /**
+     * Start loading on {@code executor} instead of waiting for the first acquisition
+     */
+    public void loadInBackground(Executor executor) {
+        FutureTask<Void> task = loader;
+        if (task != null) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Wait until the collection is loaded, loading it on this thread if nobody has started.
+     * For state derived from the collection that is read without taking this lock.
+     */
+    public void awaitLoaded() {
+        if (state == State.LOADED || lock.isWriteLockedByCurrentThread()) {
+            return; // Loaded, or called from the loader itself
+        }
+        FutureTask<Void> task = loader;
+        task.run(); // No-op if already running or done
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the collection to load", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Collection failed to load", e.getCause());
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    private static Guard acquire(Lock held) {
+        held.lock();
+        return held::unlock;
+    }
+}
@@ -0,0 +1,108 @@
+package com.dicetrails.backend.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Unmodifiable, shared view of a DataManager collection for read-heavy endpoints.
+ * The view is built at most once per change to the collection's membership: appends
+ * extend the published view in place, changes to records only bump the version, and
+ * replacing or removing records invalidates it, so the first reader afterwards copies
+ * the collection under its read lock and publishes the result. Every other reader gets
+ * the published list without copying.
+ *
+ * The list is fixed, but its elements are the collection's own records, shared with
+ * every other reader and mutated in place by DataManager (stock, order status, flags).
+ * Callers must not modify them, and may see a record change while they read it; anything
+ * that needs one consistent record reads it through DataManager under the lock instead.
+ */
+public class CollectionSnapshot<T> {
+    private final CollectionLock lock;
+    private final Supplier<List<T>> source;
+    private final AtomicLong version = new AtomicLong();
+    private volatile View snapshot;
+
+    /**
+     * The first {@code size} slots of {@code elements}. Views extended by {@link #append}
+     * share the array: an append only writes past the end of the newest view, which no
+     * published list can read.
+     */
+    private static final class View {
+        final Object[] elements;
+        final int size;
+        final List<?> list;
+
+        View(Object[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+            this.list = Collections.unmodifiableList(Arrays.asList(elements).subList(0, size));
+        }
+    }
+
+    public CollectionSnapshot(CollectionLock lock, Supplier<List<T>> source) {
+        this.lock = lock;
+        this.source = source;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<T> get() {
+        View current = snapshot;
+        if (current != null) {
+            return (List<T>) current.list;
+        }
+        try (CollectionLock.Guard guard = lock.read()) {
+            // Writers are excluded while we hold the read lock, so the copy is consistent
+            current = snapshot;
+            if (current == null) {
+                List<T> data = source.get();
+                // Room to append to before the next copy
+                current = new View(data.toArray(new Object[data.size() + data.size() / 8 + 16]), data.size());
+                snapshot = current;
+            }
+            return (List<T>) current.list;
+        }
+    }
+
+    /**
+     * Called by writers, under the collection's write lock, after adding a record to the
+     * end of the collection
+     */
+    public void append(T record) {
+        View current = snapshot;
+        if (current != null) {
+            Object[] elements = current.elements;
+            if (current.size == elements.length) {
+                elements = Arrays.copyOf(elements, current.size + current.size / 2 + 16);
+            }
+            elements[current.size] = record;
+            snapshot = new View(elements, current.size + 1);
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Called by writers, under the collection's write lock, after changing records that
+     * stay in the collection, in place
+     */
+    public void touch() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Called by writers, under the collection's write lock, after any other mutation
+     */
+    public void invalidate() {
+        snapshot = null;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Increases on every mutation; lets callers cache data derived from the collection
+     */
+    public long version() {
+        return version.get();
+    }
+}
@@ -2,6 +2,7 @@ package com.dicetrails.backend.util;
 
 import com.dicetrails.backend.model.ContactMessage;
 import com.dicetrails.backend.model.Review;
+import com.dicetrails.backend.model.ReviewMedia;
 import com.dicetrails.backend.model.Voucher;
 
 // ... (existing imports, but since I can't modify top of file easily with multi-chunk in this tool, I'll assum imports are managed or I use full names if possible, but actually replace_file_content replaces contiguous blocks. I need to be careful with imports.
@@ -13,57 +14,339 @@ import com.dicetrails.backend.model.Voucher;
 // For now, I'll switch to multi_replace_file_content tool.
 
 import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.OrderItem;
 import com.dicetrails.backend.model.User;
 import com.dicetrails.backend.model.Product;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.*;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class DataManager {
     private static DataManager instance;
 
     private List<User> users;
+    private final CollectionLock usersLock = new CollectionLock();
+    private final CollectionSnapshot<User> usersView = new CollectionSnapshot<>(usersLock, () -> users);
+    private final Map<String, User> usersByEmail = new HashMap<>();
     private final String USER_FILE = "users.json";
 
     private List<Order> orders;
+    private final CollectionLock ordersLock = new CollectionLock();
+    private final CollectionSnapshot<Order> ordersView = new CollectionSnapshot<>(ordersLock, () -> orders);
+    private final Map<String, Order> ordersById = new HashMap<>();
+    private final Map<String, List<Order>> ordersByUser = new HashMap<>();
+    private final TreeSet<Order> ordersByDate = new TreeSet<>(OrderQuery.DATE_ORDER);
+    // (userId, voucher code) -> number of non-cancelled orders that redeemed it
+    private final Map<String, Integer> voucherRedemptions = new HashMap<>();
+    // Units sold per product across non-cancelled orders
+    private final BestSellerRanking bestSellers = new BestSellerRanking();
+    // The same, bucketed by order date for the last 24h / 7d / 30d
+    private final TrendingProducts trending = new TrendingProducts();
+    // Date, total, status, region and customer of every order as primitive columns
+    private final OrderColumns orderColumns = new OrderColumns();
+    // Sales per hour / day / month bucket, by region and status
+    private final SalesAnalytics salesAnalytics = new SalesAnalytics();
     private final String ORDER_FILE = "orders.json";
 
     private List<Product> products;
+    private final CollectionLock productsLock = new CollectionLock();
+    private final CollectionSnapshot<Product> productsView = new CollectionSnapshot<>(productsLock, () -> products);
+    private final Map<Integer, Product> productsById = new HashMap<>();
+    private final ProductSearchIndex productSearch = new ProductSearchIndex();
+    private final ProductFacetIndex productFacets = new ProductFacetIndex();
     private final String PRODUCT_FILE = "products.json";
 
     private List<ContactMessage> contacts;
+    private final CollectionLock contactsLock = new CollectionLock();
+    private final CollectionSnapshot<ContactMessage> contactsView = new CollectionSnapshot<>(contactsLock, () -> contacts);
     private final String CONTACT_FILE = "contacts.json";
 
     private List<Review> reviews;
+    private final CollectionLock reviewsLock = new CollectionLock();
+    private final CollectionSnapshot<Review> reviewsView = new CollectionSnapshot<>(reviewsLock, () -> reviews);
+    private final Map<String, List<Review>> reviewsByProduct = new HashMap<>();
+    private final Map<String, List<Review>> reviewsByAuthor = new HashMap<>();
+    private final Map<String, RatingSummary> ratingsByProduct = new HashMap<>();
+    private final ReviewListingIndex reviewListings = new ReviewListingIndex();
     private final String REVIEW_FILE = "reviews.json";
 
     private List<Voucher> vouchers;
+    private final CollectionLock vouchersLock = new CollectionLock();
+    private final CollectionSnapshot<Voucher> vouchersView = new CollectionSnapshot<>(vouchersLock, () -> vouchers);
+    private final Map<String, Voucher> vouchersByCode = new HashMap<>(); // Keyed by voucherKey(code)
     private final String VOUCHER_FILE = "vouchers.json";
 
+    // ID sequences, seeded at load from the data and sequences.json, then advanced lock-free
+    private final AtomicInteger userIdSequence = new AtomicInteger();
+    private final AtomicInteger orderIdSequence = new AtomicInteger();
+    private final AtomicInteger productIdSequence = new AtomicInteger();
+    private final String SEQUENCE_FILE = "sequences.json";
+    private Map<String, Integer> storedSequences; // As read from the file at startup
+    private Map<String, Integer> savedSequences;
+
     private final Gson gson;
+    private final Gson walGson; // Compact (non pretty-printed) encoding for log records
+
+    private final PersistenceConfig config;
+    private final MediaBlobStore mediaStore;
+    private final Map<String, WriteAheadLog> logs = new ConcurrentHashMap<>(); // Filled in by the loaders
+    private final Map<String, Supplier<List<?>>> collections = new HashMap<>();
+    private final Map<String, CollectionLock> locks = new LinkedHashMap<>();
+    private final Map<String, CollectionSnapshot<?>> views = new HashMap<>();
+    // Each collection's JSON file as last loaded or written, recorded in its binary snapshots
+    private final Map<String, BinarySnapshot.Source> jsonSources = new ConcurrentHashMap<>();
+    private ScheduledExecutorService compactor;
+    private FlushScheduler flushScheduler;
 
     private DataManager() {
         gson = new GsonBuilder().setPrettyPrinting().create();
-        users = loadData(USER_FILE, new TypeToken<ArrayList<User>>() {
-        }.getType());
-        orders = loadData(ORDER_FILE, new TypeToken<ArrayList<Order>>() {
-        }.getType());
-        products = loadData(PRODUCT_FILE, new TypeToken<ArrayList<Product>>() {
-        }.getType());
-        contacts = loadData(CONTACT_FILE, new TypeToken<ArrayList<ContactMessage>>() {
-        }.getType());
-        reviews = loadData(REVIEW_FILE, new TypeToken<ArrayList<Review>>() {
-        }.getType());
-        vouchers = loadData(VOUCHER_FILE, new TypeToken<ArrayList<Voucher>>() {
-        }.getType());
+        walGson = new Gson();
+        config = PersistenceConfig.fromSystemProperties();
+        mediaStore = new MediaBlobStore(Paths.get(config.getMediaDir()), config.isFsync());
+
+        locks.put(USER_FILE, usersLock);
+        locks.put(ORDER_FILE, ordersLock);
+        locks.put(PRODUCT_FILE, productsLock);
+        locks.put(CONTACT_FILE, contactsLock);
+        locks.put(REVIEW_FILE, reviewsLock);
+        locks.put(VOUCHER_FILE, vouchersLock);
+
+        views.put(USER_FILE, usersView);
+        views.put(ORDER_FILE, ordersView);
+        views.put(PRODUCT_FILE, productsView);
+        views.put(CONTACT_FILE, contactsView);
+        views.put(REVIEW_FILE, reviewsView);
+        views.put(VOUCHER_FILE, vouchersView);
+
+        collections.put(USER_FILE, () -> users);
+        collections.put(ORDER_FILE, () -> orders);
+        collections.put(PRODUCT_FILE, () -> products);
+        collections.put(CONTACT_FILE, () -> contacts);
+        collections.put(REVIEW_FILE, () -> reviews);
+        collections.put(VOUCHER_FILE, () -> vouchers);
+
+        if (config.getMode() == PersistenceConfig.Mode.WAL) {
+            startCompactor();
+        } else if (config.getMode() == PersistenceConfig.Mode.WRITE_BEHIND) {
+            flushScheduler = new FlushScheduler(config.getFlushIntervalMs(), this::writeSnapshot);
+        }
+
+        storedSequences = loadStoredSequences();
+        startLoading();
+    }
+
+    /**
+     * Collections are loaded on a small pool, hot ones first, so the first requests only
+     * wait for what they touch. Contacts (admin only) are loaded on first access instead.
+     * Until a collection has loaded, its lock makes callers wait for it.
+     */
+    private void startLoading() {
+        usersLock.setLoader(this::loadUsers);
+        ordersLock.setLoader(this::loadOrders);
+        productsLock.setLoader(this::loadProducts);
+        contactsLock.setLoader(this::loadContacts);
+        reviewsLock.setLoader(this::loadReviews);
+        vouchersLock.setLoader(this::loadVouchers);
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService loader = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "datamanager-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        productsLock.loadInBackground(loader);
+        usersLock.loadInBackground(loader);
+        ordersLock.loadInBackground(loader);
+        vouchersLock.loadInBackground(loader);
+        reviewsLock.loadInBackground(loader);
+        loader.shutdown(); // Lets the threads exit once the queue is drained
+    }
+
+    // Collection loaders, run under the collection's write lock by CollectionLock
+    private void loadUsers() {
+        users = loadData(USER_FILE, User.class, User::getEmail);
+        reindexUsers();
+        initSequence(userIdSequence, "users", 10000000, users.stream().mapToInt(User::getUserId).max().orElse(0));
+    }
+
+    private void loadOrders() {
+        // Indexed while the file is read, so the order history is walked only once
+        // Never on part of the history: a damaged file fails the load (and every order request) until it is
+        // repaired, rather than serve a truncated history and write it back over the original
+        orders = loadData(ORDER_FILE, Order.class, Order::getOrderId, false, this::clearOrderIndexes,
+                this::indexOrder);
+        int maxOrderId = 0;
+        for (Order order : orders) {
+            try {
+                maxOrderId = Math.max(maxOrderId, Integer.parseInt(order.getOrderId()));
+            } catch (NumberFormatException e) {
+                // Not a sequence-assigned ID
+            }
+        }
+        initSequence(orderIdSequence, "orders", 30000000, maxOrderId);
+    }
+
+    private void loadProducts() {
+        products = loadData(PRODUCT_FILE, Product.class, p -> String.valueOf(p.get_id()));
+        reindexProducts();
+        initSequence(productIdSequence, "products", 20000000,
+                products.stream().mapToInt(Product::get_id).max().orElse(0));
+    }
+
+    private void loadContacts() {
+        contacts = loadData(CONTACT_FILE, ContactMessage.class, ContactMessage::getId);
+    }
+
+    private void loadReviews() {
+        reviews = loadData(REVIEW_FILE, Review.class, Review::getId);
+        reindexReviews();
+        migrateReviewMedia();
+    }
+
+    private void loadVouchers() {
+        vouchers = loadData(VOUCHER_FILE, Voucher.class, v -> voucherKey(v.getCode()));
+        reindexVouchers();
+    }
+
+    /**
+     * Load state of each collection, e.g. {@code {"users": "LOADED", "contacts": "PENDING"}}
+     */
+    public Map<String, CollectionLock.State> getLoadStates() {
+        Map<String, CollectionLock.State> states = new LinkedHashMap<>();
+        for (Map.Entry<String, CollectionLock> entry : locks.entrySet()) {
+            states.put(entry.getKey().replace(".json", ""), entry.getValue().state());
+        }
+        return states;
+    }
+
+    /**
+     * True once every collection loaded in the background is available. Collections
+     * loaded on first access do not count.
+     */
+    public boolean isReady() {
+        for (CollectionLock lock : locks.values()) {
+            if (lock != contactsLock && lock.state() != CollectionLock.State.LOADED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count the references reviews hold on stored media, moving media that older versions
+     * stored inline in reviews.json into the blob store on the way, then delete the blobs
+     * no review refers to (left by reviews that failed to save before blobs were counted)
+     */
+    private void migrateReviewMedia() {
+        try (CollectionLock.Guard guard = reviewsLock.write()) {
+            int moved = 0;
+            for (Review review : reviews) {
+                if (review.getMedia() == null) {
+                    continue;
+                }
+                review.getMedia().removeIf(media -> media == null);
+                boolean changed = false;
+                for (ReviewMedia media : review.getMedia()) {
+                    try {
+                        changed |= referenceMedia(media);
+                    } catch (IOException | IllegalArgumentException e) {
+                        System.err.println("Could not move media of review " + review.getId() + ": " + e.getMessage());
+                    }
+                }
+                if (changed) {
+                    moved++;
+                }
+            }
+            if (moved > 0) {
+                persistAll(REVIEW_FILE, reviews);
+                System.out.println("Moved inline media of " + moved + " reviews to the media store");
+            }
+            if (Files.exists(Paths.get(REVIEW_FILE + ".corrupt"))) {
+                // Reviews that could not be read may still be recovered from it, with their media
+                System.out.println("Kept unreferenced media blobs while " + REVIEW_FILE + ".corrupt exists");
+                return;
+            }
+            try {
+                int swept = mediaStore.sweep();
+                if (swept > 0) {
+                    System.out.println("Deleted " + swept + " media blobs no review refers to");
+                }
+            } catch (IOException e) {
+                System.err.println("Could not clean up the media store: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Store the review's inline uploads and take a reference on every blob it points at.
+     * All or nothing: if one upload fails, the references taken so far are dropped again.
+     */
+    private void storeMedia(Review review) throws IOException {
+        if (review.getMedia() == null) {
+            return;
+        }
+        review.getMedia().removeIf(media -> media == null);
+        int referenced = 0;
+        try {
+            for (ReviewMedia media : review.getMedia()) {
+                referenceMedia(media);
+                referenced++;
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ReviewMedia media : review.getMedia().subList(0, referenced)) {
+                releaseMedia(media);
+            }
+            throw e;
+        }
+    }
+
+    // Store an inline upload, or count a reference to a stored blob; true if the media changed
+    private boolean referenceMedia(ReviewMedia media) throws IOException {
+        if (mediaStore.externalize(media)) {
+            return true;
+        }
+        if (media.getBlob() != null) {
+            mediaStore.retain(media.getBlob());
+        }
+        return false;
+    }
+
+    private void releaseMedia(ReviewMedia media) {
+        if (media.getBlob() != null) {
+            mediaStore.release(media.getBlob());
+        }
     }
 
     public static synchronized DataManager getInstance() {
@@ -73,105 +356,938 @@ public class DataManager {
         return instance;
     }
 
-    private <T> List<T> loadData(String filename, Type type) {
-        try (Reader reader = new FileReader(filename)) {
-            List<T> data = gson.fromJson(reader, type);
-            return data != null ? data : new ArrayList<>();
-        } catch (FileNotFoundException e) {
+    /**
+     * Flush pending writes and release background threads, if the instance was ever created.
+     * Called from the webapp shutdown listener.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    private void shutdown() {
+        if (flushScheduler != null) {
+            flushScheduler.shutdown();
+        }
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        for (WriteAheadLog log : logs.values()) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        System.out.println("DataManager shut down, pending writes flushed");
+    }
+
+    private <T> List<T> loadData(String filename, Class<T> elementType, Function<T, String> keyOf) {
+        return loadData(filename, elementType, keyOf, true, () -> {
+        }, record -> {
+        });
+    }
+
+    /**
+     * Load a collection, passing each record to {@code index} as it is read. If the
+     * collection changes afterwards (log replay), indexes are cleared and rebuilt.
+     *
+     * @param partialAllowed whether a damaged JSON file loads the records that can be read
+     *        (see {@link StreamingJsonLoader}); if not, the load fails with an
+     *        {@link UncheckedIOException} and the collection's lock reports it as FAILED
+     */
+    private <T> List<T> loadData(String filename, Class<T> elementType, Function<T, String> keyOf,
+            boolean partialAllowed, Runnable clearIndexes, Consumer<T> index) {
+        clearIndexes.run();
+        List<T> data = loadSnapshot(filename, elementType, partialAllowed, clearIndexes, index);
+        if (config.getMode() == PersistenceConfig.Mode.WAL) {
+            List<T> replayed = replayLog(filename, data, elementType, keyOf);
+            if (replayed != data) {
+                clearIndexes.run();
+                replayed.forEach(index);
+            }
+            data = replayed;
+        }
+        return data;
+    }
+
+    /**
+     * Load the binary snapshot if the JSON file is still the one it was written next to,
+     * otherwise the JSON file (e.g. on the first start with binary snapshots, or after a
+     * JSON file was dropped in). Only the configured format's files that are missing or
+     * stale are written straight away; in {@code both} mode an unchanged pair loads with
+     * no writes at all.
+     */
+    private <T> List<T> loadSnapshot(String filename, Class<T> elementType, boolean partialAllowed,
+            Runnable clearIndexes, Consumer<T> index) {
+        Path json = Paths.get(filename);
+        Path binary = Paths.get(binaryFileOf(filename));
+        PersistenceConfig.SnapshotFormat format = config.getSnapshotFormat();
+        BinarySnapshot.Source source = currentBinarySource(json, binary);
+        if (source != null) {
+            try {
+                List<T> data = BinarySnapshot.read(binary, elementType);
+                data.forEach(index);
+                jsonSources.put(filename, source);
+                if (format != PersistenceConfig.SnapshotFormat.BINARY && !source.hasSameRecords()) {
+                    writeSnapshotFiles(filename, data); // The JSON file is missing or older
+                } else if (format == PersistenceConfig.SnapshotFormat.JSON) {
+                    deleteBinary(binary);
+                }
+                return data;
+            } catch (IOException e) {
+                System.out.println("Could not load " + binary + ", falling back to " + filename);
+                e.printStackTrace();
+            }
+        }
+
+        try {
+            List<T> data = StreamingJsonLoader.read(json, gson, elementType, index, partialAllowed);
+            // Reaching here means the binary snapshot is missing, stale or unreadable,
+            // so only it needs writing: the JSON file is current
+            BinarySnapshot.Source loaded = BinarySnapshot.Source.of(json, true);
+            jsonSources.put(filename, loaded);
+            if (format == PersistenceConfig.SnapshotFormat.JSON) {
+                deleteBinary(binary);
+            } else {
+                writeBinary(binary, data, loaded);
+            }
+            return data;
+        } catch (NoSuchFileException e) {
             System.out.println("File not found: " + filename + ". Creating new file.");
             return new ArrayList<>();
         } catch (IOException e) {
+            if (!partialAllowed) {
+                System.err.println("Could not load " + filename + ", which is left as it is: " + e.getMessage());
+                throw new UncheckedIOException("Could not load " + filename, e);
+            }
             e.printStackTrace();
+            clearIndexes.run();
             return new ArrayList<>();
         }
     }
 
-    private synchronized <T> void saveData(String filename, List<T> data) {
-        try (Writer writer = new FileWriter(filename)) {
-            gson.toJson(data, writer);
+    /**
+     * Apply the collection's log on top of its snapshot. Anything replayed is folded
+     * into a fresh snapshot straight away so the log starts empty (and a torn tail
+     * record never sits in front of new appends).
+     */
+    private <T> List<T> replayLog(String filename, List<T> snapshot, Class<T> elementType,
+            Function<T, String> keyOf) {
+        WriteAheadLog log = new WriteAheadLog(filename + ".wal", config.isFsync());
+        logs.put(filename, log);
+
+        Map<String, T> byKey = new LinkedHashMap<>();
+        for (T item : snapshot) {
+            byKey.put(keyOf.apply(item), item);
+        }
+        int replayed = log.replay((op, key, value) -> {
+            if (WriteAheadLog.OP_PUT.equals(op)) {
+                byKey.put(key, walGson.fromJson(value, elementType));
+            } else if (WriteAheadLog.OP_DELETE.equals(op)) {
+                byKey.remove(key);
+            }
+        });
+        if (replayed == 0 && log.isEmpty()) {
+            return snapshot;
+        }
+
+        System.out.println("Replayed " + replayed + " log records for " + filename);
+        if (log.isDamaged()) {
+            // Compacting below starts a clean log; appends after the bad line would never be replayed
+            Path wal = Paths.get(filename + ".wal");
+            try {
+                Files.copy(wal, wal.resolveSibling(wal.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Unreadable rest of " + wal + " kept as " + wal.getFileName() + ".corrupt");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        List<T> data = new ArrayList<>(byKey.values());
+        saveData(filename, data);
+        try {
+            log.truncate();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return data;
+    }
+
+    /**
+     * Write a collection snapshot crash-safely: serialize into a temp file, fsync it
+     * (depending on the durability setting) and atomically rename it over the old file,
+     * so readers and restarts only ever see the old or the new complete file.
+     * Callers hold at least the collection's read lock; the collection lock object also
+     * serves as the monitor that keeps two writers off the same temp file.
+     */
+    private <T> void saveData(String filename, List<T> data) {
+        synchronized (locks.get(filename)) {
+            writeSnapshotFiles(filename, data);
+        }
+        if (USER_FILE.equals(filename) || ORDER_FILE.equals(filename) || PRODUCT_FILE.equals(filename)) {
+            saveSequences();
+        }
+    }
+
+    private Map<String, Integer> loadStoredSequences() {
+        try (Reader reader = new FileReader(SEQUENCE_FILE)) {
+            Map<String, Integer> data = gson.fromJson(reader, new TypeToken<HashMap<String, Integer>>() {
+            }.getType());
+            if (data != null) {
+                return data;
+            }
+        } catch (FileNotFoundException e) {
+            // First start: derive everything from the data
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * Seed a sequence with the highest of its base value, the persisted high-water mark
+     * and the largest ID in the data. Persisting the mark keeps IDs from being reused after
+     * the newest record is deleted and the server restarts.
+     */
+    private void initSequence(AtomicInteger sequence, String name, int base, int maxId) {
+        sequence.set(Math.max(Math.max(base, maxId), storedSequences.getOrDefault(name, 0)));
+    }
+
+    private synchronized void saveSequences() {
+        // Sequences of collections that have not loaded yet still hold 0, so keep their stored mark
+        Map<String, Integer> data = new LinkedHashMap<>();
+        data.put("users", Math.max(userIdSequence.get(), storedSequences.getOrDefault("users", 0)));
+        data.put("orders", Math.max(orderIdSequence.get(), storedSequences.getOrDefault("orders", 0)));
+        data.put("products", Math.max(productIdSequence.get(), storedSequences.getOrDefault("products", 0)));
+        if (data.equals(savedSequences)) {
+            return; // Most snapshots don't allocate IDs (stock, status and cart updates)
+        }
+        Path target = Paths.get(SEQUENCE_FILE).toAbsolutePath();
+        writeAtomically(data, target, target.resolveSibling(SEQUENCE_FILE + ".tmp"));
+        savedSequences = data;
+    }
+
+    /**
+     * Write a collection in the configured snapshot format(s). The binary snapshot is
+     * written after the JSON file and records its size and checksum, so a crash between
+     * the two, or a JSON file replaced later, is noticed on the next load. A binary
+     * snapshot left over from an earlier format is removed once the JSON file supersedes it.
+     */
+    private void writeSnapshotFiles(String filename, List<?> data) {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path binary = Paths.get(binaryFileOf(filename)).toAbsolutePath();
+        PersistenceConfig.SnapshotFormat format = config.getSnapshotFormat();
+        BinarySnapshot.Source source = null;
+        if (format != PersistenceConfig.SnapshotFormat.BINARY) {
+            CRC32 crc = new CRC32();
+            boolean written = writeAtomically(out -> writeJson(data, new CheckedOutputStream(out, crc)),
+                    target, target.resolveSibling(target.getFileName() + ".tmp"));
+            if (written) {
+                try {
+                    source = new BinarySnapshot.Source(Files.size(target), crc.getValue(), true);
+                    jsonSources.put(filename, source);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (format == PersistenceConfig.SnapshotFormat.JSON) {
+            deleteBinary(binary);
+            return;
+        }
+        if (source == null) {
+            // Binary only, or the JSON write failed: the JSON file is whatever was there before
+            source = jsonSource(filename, target).withSameRecords(false);
+        }
+        writeBinary(binary, data, source);
+    }
+
+    private void writeBinary(Path binary, List<?> data, BinarySnapshot.Source source) {
+        writeAtomically(out -> BinarySnapshot.write(data, source, out), binary,
+                binary.resolveSibling(binary.getFileName() + ".tmp"));
+    }
+
+    private static void deleteBinary(Path binary) {
+        try {
+            Files.deleteIfExists(binary);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // orders.json -> orders.bin
+    private static String binaryFileOf(String filename) {
+        return (filename.endsWith(".json") ? filename.substring(0, filename.length() - 5) : filename) + ".bin";
+    }
+
+    /**
+     * The JSON file's stamp as recorded in the binary snapshot, if that snapshot is the one
+     * to load: the JSON file is missing or unchanged since. Null if the JSON file is to be
+     * loaded instead, or the binary snapshot is missing or unreadable.
+     */
+    private static BinarySnapshot.Source currentBinarySource(Path json, Path binary) {
+        if (!Files.exists(binary)) {
+            return null;
+        }
+        try {
+            if (!Files.exists(json)) {
+                return BinarySnapshot.Source.NONE;
+            }
+            BinarySnapshot.Source source = BinarySnapshot.readSource(binary);
+            if (source == null) {
+                // Written before snapshots recorded their JSON file: compare file times once;
+                // the next snapshot records the source
+                return Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(json)) > 0
+                        ? BinarySnapshot.Source.of(json, false) : null;
+            }
+            return source.matches(json) ? source : null;
+        } catch (IOException e) {
+            System.out.println("Could not read " + binary + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private BinarySnapshot.Source jsonSource(String filename, Path json) {
+        BinarySnapshot.Source source = jsonSources.get(filename);
+        if (source == null) {
+            try {
+                source = BinarySnapshot.Source.of(json, false);
+                jsonSources.put(filename, source);
+            } catch (IOException e) {
+                e.printStackTrace();
+                source = BinarySnapshot.Source.NONE;
+            }
+        }
+        return source;
+    }
+
+    private interface SnapshotWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private void writeAtomically(Object data, Path target, Path temp) {
+        writeAtomically(out -> writeJson(data, out), target, temp);
+    }
+
+    private void writeJson(Object data, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        gson.toJson(data, writer);
+        writer.flush();
+    }
+
+    /**
+     * @return false if the file could not be written; the old file is left in place
+     */
+    private boolean writeAtomically(SnapshotWriter content, Path target, Path temp) {
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                    OutputStream out = new BufferedOutputStream(file)) {
+                content.writeTo(out);
+                out.flush();
+                if (config.isFsync()) {
+                    file.getFD().sync();
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void writeSnapshot(String filename) {
+        try (CollectionLock.Guard guard = locks.get(filename).read()) {
+            saveData(filename, collections.get(filename).get());
+        }
+    }
+
+    // Persistence helpers: in SYNC mode every mutation rewrites the collection file,
+    // in WRITE_BEHIND mode the collection is only marked dirty for the flush scheduler,
+    // in WAL mode only the changed record is appended to the collection's log.
+    // Every mutation goes through one of them, so they also update the published snapshot:
+    // persistAdd extends it, persistChange and persistPutAll keep it (the records changed in
+    // place), and the others retire it.
+    private <T> void persistPut(String filename, List<T> data, String key, T record) {
+        views.get(filename).invalidate();
+        writePut(filename, data, key, record);
+    }
+
+    /**
+     * Persist a record just added to the end of its collection
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void persistAdd(String filename, List<T> data, String key, T record) {
+        ((CollectionSnapshot<T>) views.get(filename)).append(record);
+        writePut(filename, data, key, record);
+    }
+
+    /**
+     * Persist a record of the collection changed in place
+     */
+    private <T> void persistChange(String filename, List<T> data, String key, T record) {
+        views.get(filename).touch();
+        writePut(filename, data, key, record);
+    }
+
+    private <T> void writePut(String filename, List<T> data, String key, T record) {
+        switch (config.getMode()) {
+            case WAL:
+                appendToLog(filename, WriteAheadLog.OP_PUT, key, walGson.toJsonTree(record));
+                break;
+            case WRITE_BEHIND:
+                flushScheduler.markDirty(filename);
+                break;
+            default:
+                saveData(filename, data);
+        }
+    }
+
+    /**
+     * Persist several records of one collection, changed in place, as one step: one log
+     * append (synced once), one dirty mark or one snapshot
+     */
+    private <T> void persistPutAll(String filename, List<T> data, Map<String, T> records) {
+        views.get(filename).touch();
+        switch (config.getMode()) {
+            case WAL:
+                Map<String, JsonElement> values = new LinkedHashMap<>();
+                for (Map.Entry<String, T> record : records.entrySet()) {
+                    values.put(record.getKey(), walGson.toJsonTree(record.getValue()));
+                }
+                try {
+                    logs.get(filename).appendPuts(values);
+                } catch (IOException e) {
+                    // Fall back to a full snapshot so the mutation is not lost
+                    e.printStackTrace();
+                    compact(filename);
+                }
+                break;
+            case WRITE_BEHIND:
+                flushScheduler.markDirty(filename);
+                break;
+            default:
+                saveData(filename, data);
+        }
+    }
+
+    private <T> void persistDelete(String filename, List<T> data, String key) {
+        views.get(filename).invalidate();
+        switch (config.getMode()) {
+            case WAL:
+                appendToLog(filename, WriteAheadLog.OP_DELETE, key, null);
+                break;
+            case WRITE_BEHIND:
+                flushScheduler.markDirty(filename);
+                break;
+            default:
+                saveData(filename, data);
+        }
+    }
+
+    private <T> void persistDeleteAll(String filename, List<T> data, List<String> keys) {
+        views.get(filename).invalidate();
+        switch (config.getMode()) {
+            case WAL:
+                for (String key : keys) {
+                    appendToLog(filename, WriteAheadLog.OP_DELETE, key, null);
+                }
+                break;
+            case WRITE_BEHIND:
+                flushScheduler.markDirty(filename);
+                break;
+            default:
+                saveData(filename, data);
+        }
+    }
+
+    /**
+     * Persist a wholesale replacement of a collection (no per-record delta available)
+     */
+    private <T> void persistAll(String filename, List<T> data) {
+        views.get(filename).invalidate();
+        switch (config.getMode()) {
+            case WAL:
+                compact(filename);
+                break;
+            case WRITE_BEHIND:
+                flushScheduler.markDirty(filename);
+                break;
+            default:
+                saveData(filename, data);
+        }
+    }
+
+    private void appendToLog(String filename, String op, String key, JsonElement value) {
+        try {
+            logs.get(filename).append(op, key, value);
+        } catch (IOException e) {
+            // Fall back to a full snapshot so the mutation is not lost
+            e.printStackTrace();
+            compact(filename);
+        }
+    }
+
+    /**
+     * Fold a collection's log into a fresh snapshot and start a new, empty log
+     */
+    private void compact(String filename) {
+        // Exclusive, so no append can slip in between the snapshot and the truncate
+        try (CollectionLock.Guard guard = locks.get(filename).write()) {
+            saveData(filename, collections.get(filename).get());
+            logs.get(filename).truncate();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void startCompactor() {
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "datamanager-wal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getWalCompactIntervalMs();
+        compactor.scheduleWithFixedDelay(this::compactLogs, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void compactLogs() {
+        for (Map.Entry<String, WriteAheadLog> entry : logs.entrySet()) {
+            if (entry.getValue().size() >= config.getWalCompactThreshold()) {
+                compact(entry.getKey());
+            }
+        }
+    }
+
+    // Primary-key indexes. Callers hold the collection's write lock. On duplicate keys the
+    // first entry wins, matching the findFirst() lookups these replaced.
+    private void reindexUsers() {
+        usersByEmail.clear();
+        for (User user : users) {
+            usersByEmail.putIfAbsent(user.getEmail(), user);
+        }
+    }
+
+    private void clearOrderIndexes() {
+        ordersById.clear();
+        ordersByUser.clear();
+        ordersByDate.clear();
+        voucherRedemptions.clear();
+        bestSellers.clear();
+        trending.clear();
+        orderColumns.clear();
+        salesAnalytics.clear();
+    }
+
+    private void indexOrder(Order order) {
+        if (ordersById.putIfAbsent(order.getOrderId(), order) == null) {
+            ordersByDate.add(order);
+        }
+        addToIndex(ordersByUser, order.getUserId(), order);
+        onOrderAdded(order);
+    }
+
+    // Order lifecycle hooks for derived order state. Callers hold the orders write lock.
+    private void onOrderAdded(Order order) {
+        orderColumns.add(order);
+        salesAnalytics.record(order, order.getStatus(), 1);
+        if (!Order.isCancelled(order.getStatus())) {
+            countOrder(order, 1);
+        }
+    }
+
+    private void onOrderRemoved(Order order) {
+        orderColumns.remove(order);
+        salesAnalytics.record(order, order.getStatus(), -1);
+        if (!Order.isCancelled(order.getStatus())) {
+            countOrder(order, -1);
+        }
+    }
+
+    private void onOrderStatusChanged(Order order, String oldStatus) {
+        orderColumns.updateStatus(order);
+        salesAnalytics.record(order, oldStatus, -1);
+        salesAnalytics.record(order, order.getStatus(), 1);
+        boolean wasCancelled = Order.isCancelled(oldStatus);
+        boolean nowCancelled = Order.isCancelled(order.getStatus());
+        if (!wasCancelled && nowCancelled) {
+            countOrder(order, -1);
+        } else if (wasCancelled && !nowCancelled) {
+            countOrder(order, 1);
+        }
+    }
+
+    // Adds (delta 1) or takes back (delta -1) everything a live order contributes
+    private void countOrder(Order order, int delta) {
+        countRedemption(order, delta);
+        countSales(order, delta);
+    }
+
+    private void countRedemption(Order order, int delta) {
+        String code = order.getVoucherCode();
+        if (code == null || code.isEmpty()) {
+            return;
+        }
+        voucherRedemptions.compute(redemptionKey(order.getUserId(), code), (key, count) -> {
+            int updated = (count != null ? count : 0) + delta;
+            return updated > 0 ? updated : null;
+        });
+    }
+
+    private void countSales(Order order, int delta) {
+        if (order.getItems() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (OrderItem item : order.getItems()) {
+            int productId = item.getProductId();
+            int quantity = item.getQuantity();
+            if (productId > 0 && quantity > 0) {
+                bestSellers.record(productId, delta * quantity);
+                trending.record(productId, order.getDate(), delta * quantity, now);
+            }
+        }
+    }
+
+    private static String redemptionKey(String userId, String code) {
+        return userId + "\n" + voucherKey(code);
+    }
+
+    private void reindexProducts() {
+        productsById.clear();
+        productSearch.clear();
+        productFacets.clear();
+        for (Product product : products) {
+            if (productsById.putIfAbsent(product.get_id(), product) == null) {
+                onProductAdded(product);
+            }
+        }
+    }
+
+    // Product lifecycle hooks for derived product state. Callers hold the products write lock.
+    private void onProductAdded(Product product) {
+        productSearch.add(product);
+        productFacets.add(product);
+    }
+
+    private void onProductRemoved(Product product) {
+        productSearch.remove(product.get_id());
+        productFacets.remove(product.get_id());
+    }
+
+    // Also called when a product was modified in place, so derived state keeps its own copy of old values
+    private void onProductChanged(Product product) {
+        productSearch.add(product);
+        productFacets.add(product);
+    }
+
+    private void reindexReviews() {
+        reviewsByProduct.clear();
+        reviewsByAuthor.clear();
+        ratingsByProduct.clear();
+        reviewListings.clear();
+        for (Review review : reviews) {
+            addToIndex(reviewsByProduct, review.getProductId(), review);
+            addToIndex(reviewsByAuthor, review.getUser(), review);
+            onReviewAdded(review);
+        }
+    }
+
+    // Review lifecycle hooks for derived review state. Callers hold the reviews write lock.
+    private void onReviewAdded(Review review) {
+        ratingsByProduct.computeIfAbsent(review.getProductId(), RatingSummary::new).apply(review, 1);
+        reviewListings.add(review);
+    }
+
+    private void onReviewRemoved(Review review) {
+        reviewListings.remove(review);
+        RatingSummary summary = ratingsByProduct.get(review.getProductId());
+        if (summary != null) {
+            summary.apply(review, -1);
+            if (summary.getCount() <= 0) {
+                ratingsByProduct.remove(review.getProductId());
+            }
+        }
+    }
+
+    // Secondary (one-to-many) indexes keep entries in insertion order, like the main list
+    private static <T> void addToIndex(Map<String, List<T>> index, String key, T value) {
+        index.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+    }
+
+    private static <T> void removeFromIndex(Map<String, List<T>> index, String key, T value) {
+        List<T> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(value);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static <T> List<T> lookupIndex(Map<String, List<T>> index, String key) {
+        List<T> bucket = index.get(key);
+        return bucket != null ? new ArrayList<>(bucket) : new ArrayList<>();
+    }
+
+    private void reindexVouchers() {
+        vouchersByCode.clear();
+        for (Voucher voucher : vouchers) {
+            vouchersByCode.putIfAbsent(voucherKey(voucher.getCode()), voucher);
+        }
+    }
+
+    private static String voucherKey(String code) {
+        return code != null ? code.toUpperCase(Locale.ROOT) : null;
     }
 
     // User-related methods
-    public synchronized void addUser(User user) {
-        // Assign next userId if not already set
-        if (user.getUserId() == 0) {
-            user.setUserId(getNextUserId());
+    public void addUser(User user) {
+        try (CollectionLock.Guard guard = usersLock.write()) {
+            // Assign next userId if not already set
+            if (user.getUserId() == 0) {
+                user.setUserId(getNextUserId());
+            }
+            users.add(user);
+            usersByEmail.putIfAbsent(user.getEmail(), user);
+            persistAdd(USER_FILE, users, user.getEmail(), user);
         }
-        users.add(user);
-        saveData(USER_FILE, users);
     }
 
     public Optional<User> getUserByEmail(String email) {
-        return users.stream().filter(u -> u.getEmail().equals(email)).findFirst();
+        try (CollectionLock.Guard guard = usersLock.read()) {
+            return Optional.ofNullable(usersByEmail.get(email));
+        }
     }
 
-    public synchronized void updateUser(User updatedUser) {
-        for (int i = 0; i < users.size(); i++) {
-            if (users.get(i).getEmail().equals(updatedUser.getEmail())) {
-                users.set(i, updatedUser);
-                saveData(USER_FILE, users);
-                break;
+    public void updateUser(User updatedUser) {
+        try (CollectionLock.Guard guard = usersLock.write()) {
+            User existing = usersByEmail.get(updatedUser.getEmail());
+            if (existing != null) {
+                // Servlets usually modify the instance they looked up, so the list is already current
+                if (existing != updatedUser) {
+                    users.set(users.indexOf(existing), updatedUser);
+                    usersByEmail.put(updatedUser.getEmail(), updatedUser);
+                }
+                persistPut(USER_FILE, users, updatedUser.getEmail(), updatedUser);
             }
         }
     }
 
-    public synchronized int getNextUserId() {
-        return users.stream()
-                .mapToInt(User::getUserId)
-                .max()
-                .orElse(10000000) + 1;
+    /**
+     * Reserve the next user ID. IDs are never handed out twice, even if unused.
+     */
+    public int getNextUserId() {
+        usersLock.awaitLoaded(); // The sequence is seeded from the loaded users
+        return userIdSequence.incrementAndGet();
     }
 
     // Order-related methods
-    public synchronized void saveOrder(Order order) {
-        int nextOrderId = getNextOrderId();
-        order.setOrderId(String.valueOf(nextOrderId));
-        orders.add(order);
-        saveData(ORDER_FILE, orders);
+    /**
+     * Checkout as one unit of work. Under the orders and products locks (and the users
+     * lock only if the order used the newsletter discount):
+     * <ol>
+     * <li>check that every product exists and has stock for all its lines together</li>
+     * <li>take the stock and assign the order ID</li>
+     * <li>record the order and mark the newsletter discount as used</li>
+     * <li>persist each touched collection once</li>
+     * </ol>
+     * If any line fails the check, nothing changes.
+     *
+     * @throws IllegalArgumentException naming the first line that cannot be filled
+     */
+    public void placeOrder(Order order) {
+        // Lock order: users, orders, products. Most orders never touch the user, so logins
+        // and cart reads are not held up by the order and product writes below.
+        try (CollectionLock.Guard usersGuard = order.isNewsletterDiscountApplied() ? usersLock.write() : null;
+                CollectionLock.Guard ordersGuard = ordersLock.write();
+                CollectionLock.Guard productsGuard = productsLock.write()) {
+            Map<Integer, Integer> quantities = new LinkedHashMap<>(); // Product ID -> units over all lines
+            if (order.getItems() != null) {
+                for (OrderItem item : order.getItems()) {
+                    if (item.getQuantity() <= 0) {
+                        throw new IllegalArgumentException("Invalid quantity for product " + item.getProductId());
+                    }
+                    quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+                }
+            }
+            for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                Product product = productsById.get(line.getKey());
+                if (product == null) {
+                    throw new IllegalArgumentException("Product " + line.getKey() + " is no longer available");
+                }
+                if (product.getQuantity() < line.getValue()) {
+                    throw new IllegalArgumentException("Only " + product.getQuantity() + " left of "
+                            + product.getName());
+                }
+            }
+
+            // Every line can be filled; nothing below can fail the checkout. Only stock changes,
+            // which no derived product state reads, so the search and facet indexes are left alone.
+            Map<String, Product> reserved = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                Product product = productsById.get(line.getKey());
+                product.setQuantity(product.getQuantity() - line.getValue());
+                reserved.put(String.valueOf(product.get_id()), product);
+            }
+            order.setOrderId(String.valueOf(orderIdSequence.incrementAndGet()));
+            addOrder(order);
+            User user = order.isNewsletterDiscountApplied() ? usersByEmail.get(order.getUserId()) : null;
+            if (user != null && !user.hasUsedNewsletterDiscount()) {
+                user.setHasUsedNewsletterDiscount(true);
+            } else {
+                user = null;
+            }
+
+            persistAdd(ORDER_FILE, orders, order.getOrderId(), order);
+            if (!reserved.isEmpty()) {
+                persistPutAll(PRODUCT_FILE, products, reserved);
+            }
+            if (user != null) {
+                persistChange(USER_FILE, users, user.getEmail(), user);
+            }
+        }
     }
 
-    private int getNextOrderId() {
-        return orders.stream()
-                .map(Order::getOrderId)
-                .mapToInt(Integer::parseInt)
-                .max()
-                .orElse(30000000) + 1;
+    // Callers hold the orders write lock
+    private void addOrder(Order order) {
+        orders.add(order);
+        ordersById.put(order.getOrderId(), order);
+        ordersByDate.add(order);
+        addToIndex(ordersByUser, order.getUserId(), order);
+        onOrderAdded(order);
     }
 
     public List<Order> getOrders(String userId) {
-        return orders.stream()
-                .filter(order -> order.getUserId().equals(userId))
-                .collect(Collectors.toList());
+        try (CollectionLock.Guard guard = ordersLock.read()) {
+            return lookupIndex(ordersByUser, userId);
+        }
+    }
+
+    public Optional<Order> getOrderById(String orderId) {
+        try (CollectionLock.Guard guard = ordersLock.read()) {
+            return Optional.ofNullable(ordersById.get(orderId));
+        }
     }
 
+    /**
+     * Unmodifiable snapshot of all orders; shared between callers, not copied per call.
+     * The orders themselves are the live records (see {@link CollectionSnapshot}).
+     */
     public List<Order> getAllOrders() {
-        return new ArrayList<>(orders);
+        return ordersView.get();
+    }
+
+    /**
+     * Changes on every order mutation; used to cache rendered order responses
+     */
+    public long getOrdersVersion() {
+        return ordersView.version();
     }
 
-    public synchronized void saveOrders(List<Order> updatedOrders) {
-        this.orders = updatedOrders;
-        saveData(ORDER_FILE, orders);
+    /**
+     * One page of orders in date order, matching the query's filters. Walks the date
+     * index from the cursor, so the cost depends on the page size, not the order history.
+     */
+    public OrderQuery.Page findOrders(OrderQuery query) {
+        try (CollectionLock.Guard guard = ordersLock.read()) {
+            return query.page(ordersByDate);
+        }
     }
 
-    public synchronized boolean updateOrderStatus(String orderId, String newStatus) {
-        for (Order order : orders) {
-            if (order.getOrderId().equals(orderId)) {
-                order.setStatus(newStatus);
+    /**
+     * Distinct users with orders dated in [from, to] (epoch millis), optionally of one
+     * region and/or status, counted as {@link #getSalesReport} counts orders. Scans the
+     * order columns, not the Order objects.
+     */
+    public int countCustomers(long from, long to, String region, String status) {
+        try (CollectionLock.Guard guard = ordersLock.read()) {
+            return orderColumns.countCustomers(from, to, region, status);
+        }
+    }
 
-                // Generate tracking number when marked as Shipped
-                if ("Shipped".equals(newStatus)
-                        && (order.getTrackingNumber() == null || order.getTrackingNumber().isEmpty())) {
-                    order.setTrackingNumber(generateTrackingNumber());
+    /**
+     * Sales per bucket over [from, to] (epoch millis), optionally for one region and/or
+     * status; reads only the maintained buckets, never the orders themselves
+     *
+     * @throws IllegalArgumentException if the range has too many buckets
+     */
+    public SalesAnalytics.Report getSalesReport(SalesAnalytics.Granularity granularity, long from, long to,
+            String region, String status) {
+        try (CollectionLock.Guard guard = ordersLock.read()) {
+            return salesAnalytics.report(granularity, from, to, region, status);
+        }
+    }
+
+    public boolean updateOrderStatus(String orderId, String newStatus) {
+        try (CollectionLock.Guard guard = ordersLock.write()) {
+            Order order = ordersById.get(orderId);
+            if (order == null) {
+                return false;
+            }
+            String oldStatus = order.getStatus();
+            order.setStatus(newStatus);
+            onOrderStatusChanged(order, oldStatus);
+
+            // Generate tracking number when marked as Shipped
+            if ("Shipped".equals(newStatus)
+                    && (order.getTrackingNumber() == null || order.getTrackingNumber().isEmpty())) {
+                order.setTrackingNumber(generateTrackingNumber());
+            }
+
+            persistChange(ORDER_FILE, orders, orderId, order);
+            return true;
+        }
+    }
+
+    /**
+     * Mark an order as Cancelled, unless it is already cancelled, shipped or completed,
+     * and put its items back in stock. The check, the status change and the stock
+     * restoration happen under the orders and products locks together, so concurrent
+     * cancel requests cannot both succeed (and both restore stock), and no reader sees
+     * the order cancelled with its stock still reserved.
+     *
+     * @return true if this call cancelled the order
+     */
+    public boolean cancelOrder(String orderId) {
+        // Lock order: orders, products, as in placeOrder
+        try (CollectionLock.Guard ordersGuard = ordersLock.write();
+                CollectionLock.Guard productsGuard = productsLock.write()) {
+            Order order = ordersById.get(orderId);
+            if (order == null || Order.isCancelled(order.getStatus())
+                    || "Shipped".equals(order.getStatus()) || "Completed".equals(order.getStatus())) {
+                return false;
+            }
+            String oldStatus = order.getStatus();
+            order.setStatus(Order.CANCELLED);
+            onOrderStatusChanged(order, oldStatus);
+
+            // Stock only, as in placeOrder: no reindexing
+            Map<String, Product> restored = new LinkedHashMap<>();
+            if (order.getItems() != null) {
+                for (OrderItem item : order.getItems()) {
+                    Product product = productsById.get(item.getProductId());
+                    if (product == null) {
+                        System.err.println("Cannot restore stock of deleted product " + item.getProductId()
+                                + " for order " + orderId);
+                        continue;
+                    }
+                    product.setQuantity(product.getQuantity() + item.getQuantity());
+                    restored.put(String.valueOf(product.get_id()), product);
                 }
+            }
 
-                saveData(ORDER_FILE, orders);
-                return true;
+            persistChange(ORDER_FILE, orders, orderId, order);
+            if (!restored.isEmpty()) {
+                persistPutAll(PRODUCT_FILE, products, restored);
             }
+            return true;
         }
-        return false;
     }
 
     private String generateTrackingNumber() {
@@ -180,178 +1296,401 @@ public class DataManager {
         return "TR" + randomNumber;
     }
 
-    public synchronized boolean deleteOrder(String orderId) {
-        boolean removed = orders.removeIf(order -> order.getOrderId().equals(orderId));
-        if (removed) {
-            saveData(ORDER_FILE, orders);
+    public boolean deleteOrder(String orderId) {
+        try (CollectionLock.Guard guard = ordersLock.write()) {
+            Order removed = ordersById.remove(orderId);
+            if (removed == null) {
+                return false;
+            }
+            orders.removeIf(order -> order.getOrderId().equals(orderId));
+            ordersByDate.remove(removed);
+            removeFromIndex(ordersByUser, removed.getUserId(), removed);
+            onOrderRemoved(removed);
+            persistDelete(ORDER_FILE, orders, orderId);
+            return true;
         }
-        return removed;
     }
 
     // Product management methods
-    public synchronized int getNextProductId() {
-        return products.stream()
-                .mapToInt(Product::get_id)
-                .max()
-                .orElse(20000000) + 1;
+    /**
+     * Reserve the next product ID. IDs are never handed out twice, even if unused.
+     */
+    public int getNextProductId() {
+        productsLock.awaitLoaded();
+        return productIdSequence.incrementAndGet();
     }
 
-    public synchronized void addProduct(Product product) {
+    public void addProduct(Product product) {
         int nextId = getNextProductId();
-        product.set_id(nextId);
-        products.add(product);
-        saveData(PRODUCT_FILE, products);
+        try (CollectionLock.Guard guard = productsLock.write()) {
+            product.set_id(nextId);
+            products.add(product);
+            productsById.put(nextId, product);
+            onProductAdded(product);
+            persistAdd(PRODUCT_FILE, products, String.valueOf(nextId), product);
+        }
     }
 
+    /**
+     * Unmodifiable snapshot of all products; shared between callers, not copied per call.
+     * The products themselves are the live records (see {@link CollectionSnapshot}).
+     */
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products);
+        return productsView.get();
+    }
+
+    /**
+     * Changes on every product mutation; used to cache rendered catalogue responses
+     */
+    public long getProductsVersion() {
+        return productsView.version();
+    }
+
+    /**
+     * The {@code limit} best-selling products, most units sold first. Products that have
+     * been deleted are skipped; if fewer than {@code limit} products have sold, the rest
+     * is filled with unsold products in catalogue order.
+     */
+    public List<Product> getBestSellers(int limit) {
+        ordersLock.awaitLoaded(); // The ranking is built from the orders
+        try (CollectionLock.Guard guard = productsLock.read()) {
+            List<Product> result = new ArrayList<>();
+            for (int productId : bestSellers.topProductIds(limit, productsById::containsKey)) {
+                result.add(productsById.get(productId));
+            }
+            for (int i = 0; i < products.size() && result.size() < limit; i++) {
+                Product product = products.get(i);
+                if (bestSellers.unitsSold(product.get_id()) == 0) {
+                    result.add(product);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The {@code limit} products with the most units sold in non-cancelled orders placed
+     * within the given window, most first. Unlike {@link #getBestSellers(int)} the result
+     * is not padded, so it may be shorter than {@code limit}.
+     */
+    public List<Product> getTrendingProducts(TrendingProducts.Window window, int limit) {
+        ordersLock.awaitLoaded();
+        try (CollectionLock.Guard guard = productsLock.read()) {
+            List<Product> result = new ArrayList<>();
+            for (int productId : trending.topProductIds(window, limit, productsById::containsKey,
+                    System.currentTimeMillis())) {
+                result.add(productsById.get(productId));
+            }
+            return result;
+        }
     }
 
     public Optional<Product> getProductById(int productId) {
-        return products.stream()
-                .filter(p -> p.get_id() == productId)
-                .findFirst();
+        try (CollectionLock.Guard guard = productsLock.read()) {
+            return Optional.ofNullable(productsById.get(productId));
+        }
     }
 
-    public synchronized boolean updateProduct(Product updatedProduct) {
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).get_id() == updatedProduct.get_id()) {
-                products.set(i, updatedProduct);
-                saveData(PRODUCT_FILE, products);
-                return true;
+    public boolean updateProduct(Product updatedProduct) {
+        try (CollectionLock.Guard guard = productsLock.write()) {
+            Product existing = productsById.get(updatedProduct.get_id());
+            if (existing == null) {
+                return false;
             }
+            if (existing != updatedProduct) {
+                products.set(products.indexOf(existing), updatedProduct);
+                productsById.put(updatedProduct.get_id(), updatedProduct);
+            }
+            onProductChanged(updatedProduct);
+            persistPut(PRODUCT_FILE, products, String.valueOf(updatedProduct.get_id()), updatedProduct);
+            return true;
         }
-        return false;
     }
 
-    public synchronized void saveProducts(List<Product> productList) {
-        this.products = new ArrayList<>(productList);
-        saveData(PRODUCT_FILE, products);
+    public boolean deleteProduct(int productId) {
+        try (CollectionLock.Guard guard = productsLock.write()) {
+            Product removed = productsById.remove(productId);
+            if (removed == null) {
+                return false;
+            }
+            products.removeIf(product -> product.get_id() == productId);
+            onProductRemoved(removed);
+            persistDelete(PRODUCT_FILE, products, String.valueOf(productId));
+            return true;
+        }
     }
 
-    public synchronized boolean reduceStock(int productId, int quantity) {
-        Optional<Product> productOpt = getProductById(productId);
-        if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-            if (product.getQuantity() >= quantity) {
-                product.setQuantity(product.getQuantity() - quantity);
-                return updateProduct(product);
+    /**
+     * Full-text search over visible products, best match first
+     */
+    public ProductSearchIndex.Result<Product> searchProducts(String query, int offset, int limit) {
+        try (CollectionLock.Guard guard = productsLock.read()) {
+            ProductSearchIndex.Result<Integer> result = productSearch.search(query, offset, limit,
+                    productId -> productsById.get(productId).isVisible());
+            List<Product> page = new ArrayList<>();
+            for (int productId : result.getItems()) {
+                page.add(productsById.get(productId));
             }
+            return new ProductSearchIndex.Result<>(page, result.getTotal());
         }
-        return false;
     }
 
     /**
-     * Increase stock for a product (used when orders are cancelled)
+     * Products matching the query's facet filters, plus per-facet-value counts
      */
-    public synchronized boolean increaseStock(int productId, int quantity) {
-        Optional<Product> productOpt = getProductById(productId);
-        if (productOpt.isPresent()) {
-            Product product = productOpt.get();
+    public ProductFacetIndex.Result filterProducts(ProductQuery query) {
+        try (CollectionLock.Guard guard = productsLock.read()) {
+            return productFacets.query(query);
+        }
+    }
+
+    public void saveProducts(List<Product> productList) {
+        try (CollectionLock.Guard guard = productsLock.write()) {
+            this.products = new ArrayList<>(productList);
+            reindexProducts();
+            persistAll(PRODUCT_FILE, products);
+        }
+    }
+
+    /**
+     * Increase stock for a product (cancelOrder restores the stock of its order itself)
+     */
+    public boolean increaseStock(int productId, int quantity) {
+        try (CollectionLock.Guard guard = productsLock.write()) {
+            Product product = productsById.get(productId);
+            if (product == null) {
+                return false;
+            }
+            // Stock only, as in placeOrder: no reindexing
             product.setQuantity(product.getQuantity() + quantity);
-            return updateProduct(product);
+            persistChange(PRODUCT_FILE, products, String.valueOf(productId), product);
+            return true;
         }
-        return false;
     }
 
     // Contact management methods
-    public synchronized void addContact(ContactMessage message) {
-        contacts.add(message);
-        saveData(CONTACT_FILE, contacts);
+    public void addContact(ContactMessage message) {
+        try (CollectionLock.Guard guard = contactsLock.write()) {
+            contacts.add(message);
+            persistAdd(CONTACT_FILE, contacts, message.getId(), message);
+        }
     }
 
+    /**
+     * Unmodifiable snapshot of all contacts; shared between callers, not copied per call
+     */
     public List<ContactMessage> getContacts() {
-        return new ArrayList<>(contacts);
+        return contactsView.get();
     }
 
-    public synchronized boolean deleteContact(String id) {
-        boolean removed = contacts.removeIf(msg -> msg.getId().equals(id));
-        if (removed) {
-            saveData(CONTACT_FILE, contacts);
+    public boolean deleteContact(String id) {
+        try (CollectionLock.Guard guard = contactsLock.write()) {
+            boolean removed = contacts.removeIf(msg -> msg.getId().equals(id));
+            if (removed) {
+                persistDelete(CONTACT_FILE, contacts, id);
+            }
+            return removed;
         }
-        return removed;
     }
 
     // Review management methods
     public List<Review> getReviews(String productId) {
-        return reviews.stream()
-                .filter(review -> review.getProductId().equals(productId))
-                .collect(Collectors.toList());
+        try (CollectionLock.Guard guard = reviewsLock.read()) {
+            return lookupIndex(reviewsByProduct, productId);
+        }
     }
 
+    /**
+     * Unmodifiable snapshot of all reviews; shared between callers, not copied per call
+     */
     public List<Review> getAllReviews() {
-        return new ArrayList<>(reviews);
+        return reviewsView.get();
     }
 
-    public synchronized void addReview(Review review) {
-        reviews.add(review);
-        saveData(REVIEW_FILE, reviews);
+    /**
+     * Changes on every review mutation; used to cache rendered review responses
+     */
+    public long getReviewsVersion() {
+        return reviewsView.version();
     }
 
-    public synchronized void markOrderItemAsReviewed(String orderId, String productId) {
-        for (Order order : orders) {
-            if (order.getOrderId().equals(orderId)) {
-                List<Map<String, Object>> items = order.getItems();
-                boolean updated = false;
-                for (Map<String, Object> item : items) {
-                    // Items are stored as maps, usually with "id" or "productId" key
-                    // Based on typical structure, let's assume "id" holds the product ID
-                    // We need to cast carefully
-                    Object idObj = item.get("id");
-                    String itemId = idObj != null ? String.valueOf(idObj) : "";
-
-                    if (itemId.equals(productId)) {
-                        item.put("isReviewed", true);
-                        updated = true;
-                    }
+    /**
+     * One page of reviews in the requested order. Reads pre-sorted listings, so the cost
+     * is the offset plus the page size (plus whatever the filters skip), not a full sort.
+     */
+    public ReviewQuery.Page findReviews(ReviewQuery query) {
+        try (CollectionLock.Guard guard = reviewsLock.read()) {
+            List<Review> page = new ArrayList<>();
+            int matched = 0;
+            Iterator<Review> it = reviewListings.iterate(query.getProductId(), query.getSort());
+            int end = query.getOffset() + query.getLimit();
+            while (it.hasNext() && matched < end) {
+                Review review = it.next();
+                if (query.matches(review) && matched++ >= query.getOffset()) {
+                    page.add(review);
                 }
-                if (updated) {
-                    saveData(ORDER_FILE, orders);
+            }
+            return new ReviewQuery.Page(page, countReviews(query));
+        }
+    }
+
+    // Totals come from the rating aggregates where they can; only combined filters need a scan
+    private int countReviews(ReviewQuery query) {
+        String productId = query.getProductId();
+        if (!query.isFiltered()) {
+            return reviewListings.size(productId);
+        }
+        if (productId != null && (query.getHasMedia() == null || query.getRating() == null)) {
+            RatingSummary summary = ratingsByProduct.get(productId);
+            if (summary == null) {
+                return 0;
+            }
+            if (query.getRating() != null) {
+                int stars = query.getRating();
+                return stars >= 1 && stars <= 5 ? summary.getHistogram()[stars - 1] : 0;
+            }
+            return query.getHasMedia() ? summary.getMediaCount() : summary.getCount() - summary.getMediaCount();
+        }
+        int count = 0;
+        Iterator<Review> it = reviewListings.iterate(productId, ReviewQuery.Sort.DEFAULT);
+        while (it.hasNext()) {
+            if (query.matches(it.next())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Rating count, mean, star histogram and media-review count for a product,
+     * without reading its reviews. Products with no reviews get an empty summary.
+     */
+    public RatingSummary getRatingSummary(String productId) {
+        try (CollectionLock.Guard guard = reviewsLock.read()) {
+            RatingSummary summary = ratingsByProduct.get(productId);
+            return summary != null ? summary.copy() : new RatingSummary(productId);
+        }
+    }
+
+    /**
+     * Rating summaries for several products at once, in the order requested
+     */
+    public Map<String, RatingSummary> getRatingSummaries(List<String> productIds) {
+        try (CollectionLock.Guard guard = reviewsLock.read()) {
+            Map<String, RatingSummary> result = new LinkedHashMap<>();
+            for (String productId : productIds) {
+                RatingSummary summary = ratingsByProduct.get(productId);
+                result.put(productId, summary != null ? summary.copy() : new RatingSummary(productId));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if an inline upload is not an accepted, well-formed
+     *         photo or video within {@link MediaBlobStore#MAX_SIZE}
+     */
+    public void addReview(Review review) {
+        // Blob writes happen before taking the lock; identical uploads are stored once
+        try {
+            storeMedia(review);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store review media", e);
+        }
+        try (CollectionLock.Guard guard = reviewsLock.write()) {
+            reviews.add(review);
+            addToIndex(reviewsByProduct, review.getProductId(), review);
+            addToIndex(reviewsByAuthor, review.getUser(), review);
+            onReviewAdded(review);
+            persistAdd(REVIEW_FILE, reviews, review.getId(), review);
+        }
+    }
+
+    /**
+     * The file of a stored review photo or video, or null if there is no such blob
+     */
+    public Path getMediaBlob(String blobId) {
+        return mediaStore.resolve(blobId);
+    }
+
+    public void markOrderItemAsReviewed(String orderId, String productId) {
+        try (CollectionLock.Guard guard = ordersLock.write()) {
+            Order order = ordersById.get(orderId);
+            if (order == null) {
+                return;
+            }
+            if (order.getItems() == null) {
+                return;
+            }
+            int id = OrderItem.parseProductId(productId);
+            boolean updated = false;
+            for (OrderItem item : order.getItems()) {
+                if (item.getProductId() == id && !item.isReviewed()) {
+                    item.setReviewed(true);
+                    updated = true;
                 }
-                break;
+            }
+            if (updated) {
+                persistChange(ORDER_FILE, orders, orderId, order);
             }
         }
     }
 
     // Voucher management methods
+    /**
+     * Unmodifiable snapshot of all vouchers; shared between callers, not copied per call
+     */
     public List<Voucher> getAllVouchers() {
-        return new ArrayList<>(vouchers);
+        return vouchersView.get();
     }
 
     public List<Voucher> getActiveVouchers() {
-        return vouchers.stream()
+        return vouchersView.get().stream()
                 .filter(Voucher::isActive)
                 .collect(Collectors.toList());
     }
 
     public Optional<Voucher> getVoucherByCode(String code) {
-        return vouchers.stream()
-                .filter(v -> v.getCode().equalsIgnoreCase(code))
-                .findFirst();
+        try (CollectionLock.Guard guard = vouchersLock.read()) {
+            return Optional.ofNullable(vouchersByCode.get(voucherKey(code)));
+        }
     }
 
-    public synchronized void addVoucher(Voucher voucher) {
-        vouchers.add(voucher);
-        saveData(VOUCHER_FILE, vouchers);
+    public void addVoucher(Voucher voucher) {
+        try (CollectionLock.Guard guard = vouchersLock.write()) {
+            vouchers.add(voucher);
+            vouchersByCode.putIfAbsent(voucherKey(voucher.getCode()), voucher);
+            persistAdd(VOUCHER_FILE, vouchers, voucherKey(voucher.getCode()), voucher);
+        }
     }
 
-    public synchronized boolean updateVoucher(Voucher updatedVoucher) {
-        for (int i = 0; i < vouchers.size(); i++) {
-            if (vouchers.get(i).getCode().equalsIgnoreCase(updatedVoucher.getCode())) {
-                vouchers.set(i, updatedVoucher);
-                saveData(VOUCHER_FILE, vouchers);
-                return true;
+    public boolean updateVoucher(Voucher updatedVoucher) {
+        try (CollectionLock.Guard guard = vouchersLock.write()) {
+            String key = voucherKey(updatedVoucher.getCode());
+            Voucher existing = vouchersByCode.get(key);
+            if (existing == null) {
+                return false;
             }
+            if (existing != updatedVoucher) {
+                vouchers.set(vouchers.indexOf(existing), updatedVoucher);
+                vouchersByCode.put(key, updatedVoucher);
+            }
+            persistPut(VOUCHER_FILE, vouchers, key, updatedVoucher);
+            return true;
         }
-        return false;
     }
 
-    public synchronized boolean deleteVoucher(String code) {
-        boolean removed = vouchers.removeIf(v -> v.getCode().equalsIgnoreCase(code));
-        if (removed) {
-            saveData(VOUCHER_FILE, vouchers);
+    public boolean deleteVoucher(String code) {
+        try (CollectionLock.Guard guard = vouchersLock.write()) {
+            String key = voucherKey(code);
+            if (!vouchersByCode.containsKey(key)) {
+                return false;
+            }
+            vouchers.removeIf(v -> v.getCode().equalsIgnoreCase(code));
+            vouchersByCode.remove(key);
+            persistDelete(VOUCHER_FILE, vouchers, key);
+            return true;
         }
-        return removed;
     }
 
     public Optional<Voucher> validateVoucher(String code, String userId) {
@@ -359,10 +1698,11 @@ public class DataManager {
         if (voucherOpt.isPresent()) {
             Voucher voucher = voucherOpt.get();
             if (voucher.isActive()) {
-                // Check if this user has already used this voucher
-                boolean alreadyUsed = orders.stream()
-                        .anyMatch(order -> order.getUserId().equals(userId) &&
-                                code.equals(order.getVoucherCode()));
+                // Check if this user has already used this voucher (cancelled orders don't count)
+                boolean alreadyUsed;
+                try (CollectionLock.Guard guard = ordersLock.read()) {
+                    alreadyUsed = voucherRedemptions.containsKey(redemptionKey(userId, code));
+                }
 
                 if (alreadyUsed) {
                     return Optional.empty(); // Voucher already used by this user
@@ -375,8 +1715,11 @@ public class DataManager {
     }
 
     // User management methods
+    /**
+     * Unmodifiable snapshot of all users; shared between callers, not copied per call
+     */
     public List<User> getAllUsers() {
-        return new ArrayList<>(users);
+        return usersView.get();
     }
 
     /**
@@ -385,27 +1728,61 @@ public class DataManager {
      * @param userEmail Email of the user to delete
      * @return true if user was found and deleted, false otherwise
      */
-    public synchronized boolean deleteUserCompletely(String userEmail) {
-        // Find and remove user
-        boolean userRemoved = users.removeIf(u -> u.getEmail().equals(userEmail));
-
-        if (!userRemoved) {
-            return false; // User not found
-        }
-
-        // Delete all orders by this user
-        boolean ordersRemoved = orders.removeIf(order -> order.getUserId().equals(userEmail));
+    public boolean deleteUserCompletely(String userEmail) {
+        boolean ordersRemoved;
+        boolean reviewsRemoved;
+
+        // Lock order: users, orders, reviews
+        try (CollectionLock.Guard usersGuard = usersLock.write();
+                CollectionLock.Guard ordersGuard = ordersLock.write();
+                CollectionLock.Guard reviewsGuard = reviewsLock.write()) {
+            // Find and remove user
+            if (usersByEmail.remove(userEmail) == null) {
+                return false; // User not found
+            }
+            users.removeIf(u -> u.getEmail().equals(userEmail));
+
+            // Delete all orders by this user
+            List<Order> removedOrders = ordersByUser.getOrDefault(userEmail, new ArrayList<>());
+            ordersByUser.remove(userEmail);
+            ordersRemoved = !removedOrders.isEmpty();
+            if (ordersRemoved) {
+                orders.removeAll(new HashSet<>(removedOrders));
+                for (Order order : removedOrders) {
+                    ordersById.remove(order.getOrderId());
+                    ordersByDate.remove(order);
+                    onOrderRemoved(order);
+                }
+            }
 
-        // Delete all reviews by this user
-        boolean reviewsRemoved = reviews.removeIf(review -> review.getUser().equals(userEmail));
+            // Delete all reviews by this user
+            List<Review> removedReviews = reviewsByAuthor.getOrDefault(userEmail, new ArrayList<>());
+            reviewsByAuthor.remove(userEmail);
+            reviewsRemoved = !removedReviews.isEmpty();
+            if (reviewsRemoved) {
+                reviews.removeAll(new HashSet<>(removedReviews));
+                for (Review review : removedReviews) {
+                    removeFromIndex(reviewsByProduct, review.getProductId(), review);
+                    onReviewRemoved(review);
+                }
+            }
 
-        // Save all modifications
-        saveData(USER_FILE, users);
-        if (ordersRemoved) {
-            saveData(ORDER_FILE, orders);
-        }
-        if (reviewsRemoved) {
-            saveData(REVIEW_FILE, reviews);
+            // Save all modifications
+            persistDelete(USER_FILE, users, userEmail);
+            if (ordersRemoved) {
+                persistDeleteAll(ORDER_FILE, orders,
+                        removedOrders.stream().map(Order::getOrderId).collect(Collectors.toList()));
+            }
+            if (reviewsRemoved) {
+                persistDeleteAll(REVIEW_FILE, reviews,
+                        removedReviews.stream().map(Review::getId).collect(Collectors.toList()));
+                // Last, once the deletions are written or queued, so the blobs do not go before the reviews
+                for (Review review : removedReviews) {
+                    if (review.getMedia() != null) {
+                        review.getMedia().forEach(this::releaseMedia);
+                    }
+                }
+            }
         }
 
         System.out.println("User deleted: " + userEmail);
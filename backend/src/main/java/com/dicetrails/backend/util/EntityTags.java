@@ -0,0 +1,35 @@
+package com.dicetrails.backend.util;
+
+/**
+ * Reads If-None-Match headers: a comma-separated list of entity tags, or "*".
+ */
+public class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * Whether the header lists any of {@code etags}, compared whole and weakly (a "W/"
+     * prefix is ignored), or is "*"; false if there is no header
+     */
+    public static boolean matches(String ifNoneMatch, String... etags) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*")) {
+                return true;
+            }
+            for (String etag : etags) {
+                if (candidate.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
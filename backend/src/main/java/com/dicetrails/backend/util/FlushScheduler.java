@@ -0,0 +1,80 @@
+package com.dicetrails.backend.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind scheduler. Collections are marked dirty by name; each dirty
+ * collection gets a single flush scheduled intervalMs later, so a burst of
+ * mutations is coalesced into one write.
+ */
+public class FlushScheduler {
+    private final ScheduledThreadPoolExecutor executor;
+    private final long intervalMs;
+    private final Consumer<String> flusher;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public FlushScheduler(long intervalMs, Consumer<String> flusher) {
+        this.intervalMs = intervalMs;
+        this.flusher = flusher;
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "datamanager-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // On shutdown, drop delayed flushes (flushAll covers them) but let a running one finish
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    public void markDirty(String name) {
+        // Only the first mark after a flush schedules work; later ones ride along
+        if (pending.add(name)) {
+            try {
+                executor.schedule(() -> flush(name), intervalMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Already shut down: write through
+                flush(name);
+            }
+        }
+    }
+
+    private void flush(String name) {
+        // Clear the flag before writing so a mutation during the flush schedules another one
+        if (pending.remove(name)) {
+            try {
+                flusher.accept(name);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Synchronously flush every collection that still has pending writes
+     */
+    public void flushAll() {
+        List<String> names = new ArrayList<>(pending);
+        for (String name : names) {
+            flush(name);
+        }
+    }
+
+    /**
+     * Stop scheduling and write out everything still pending
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+}
@@ -0,0 +1,301 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.ReviewMedia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store for review photos and videos. A blob is saved once under
+ * the SHA-256 of its bytes, so the same upload attached to several reviews takes the
+ * space of one file. Blob IDs look like {@code <sha256>.<ext>}; the extension fixes
+ * the content type the blob is served with, and only image and video types are accepted.
+ *
+ * The store counts the references reviews hold on each blob. {@link #put} takes one,
+ * {@link #retain} counts a reference loaded from disk, and {@link #release} deletes the
+ * file when the last reference goes. Counting and deleting happen atomically per blob,
+ * so an upload of the same content cannot lose its file to a concurrent release.
+ */
+public class MediaBlobStore {
+
+    private static final Map<String, String> EXTENSIONS = new LinkedHashMap<>();
+    static {
+        EXTENSIONS.put("image/jpeg", "jpg");
+        EXTENSIONS.put("image/png", "png");
+        EXTENSIONS.put("image/gif", "gif");
+        EXTENSIONS.put("image/webp", "webp");
+        EXTENSIONS.put("video/mp4", "mp4");
+        EXTENSIONS.put("video/webm", "webm");
+        EXTENSIONS.put("video/ogg", "ogv");
+        EXTENSIONS.put("video/quicktime", "mov");
+    }
+
+    private static final Pattern BLOB_ID = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]{1,5}");
+
+    public static final int MAX_SIZE = 20 * 1024 * 1024; // Decoded bytes per photo or video
+
+    private final Path root;
+    private final boolean fsync;
+    private final Map<String, Integer> references = new ConcurrentHashMap<>();
+
+    public MediaBlobStore(Path root, boolean fsync) {
+        this.root = root;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Store content (a no-op if identical content is already stored), take a reference on
+     * it and return its blob ID
+     *
+     * @throws IllegalArgumentException if the content type is not an accepted image or video type
+     */
+    public String put(byte[] content, String contentType) throws IOException {
+        String extension = extensionOf(contentType);
+        String blobId = sha256(content) + "." + extension;
+        try {
+            references.compute(blobId, (id, count) -> {
+                try {
+                    write(pathOf(id), content);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return count == null ? 1 : count + 1;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return blobId;
+    }
+
+    /**
+     * Count a reference to a blob that is already stored, e.g. from a review loaded at startup
+     */
+    public void retain(String blobId) {
+        references.merge(blobId, 1, Integer::sum);
+    }
+
+    /**
+     * Drop a reference taken by {@link #put} or {@link #retain}; deletes the blob with its last one
+     */
+    public void release(String blobId) {
+        references.computeIfPresent(blobId, (id, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            delete(id);
+            return null;
+        });
+    }
+
+    /**
+     * Delete every stored blob nothing holds a reference to, such as uploads of reviews that
+     * were never saved. Only meaningful once every loaded reference has been retained.
+     *
+     * @return the number of blobs deleted
+     */
+    public int sweep() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        int[] deleted = { 0 };
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> BLOB_ID.matcher(name).matches())
+                    .forEach(blobId -> references.compute(blobId, (id, count) -> {
+                        if (count == null) {
+                            delete(id);
+                            deleted[0]++;
+                        }
+                        return count;
+                    }));
+        }
+        return deleted[0];
+    }
+
+    private void delete(String blobId) {
+        try {
+            Files.deleteIfExists(pathOf(blobId));
+        } catch (IOException e) {
+            System.err.println("Could not delete media blob " + blobId + ": " + e.getMessage());
+        }
+    }
+
+    private void write(Path target, byte[] content) throws IOException {
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(content));
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Check an inline upload as {@link #externalize} would, without decoding it: a base64
+     * data URL of an accepted type, no larger than {@link #MAX_SIZE} once decoded. Media
+     * that is not inline passes.
+     *
+     * @throws IllegalArgumentException with a message fit to show the uploader
+     */
+    public static void validate(ReviewMedia media) {
+        String data = media.getData();
+        if (data != null && data.startsWith("data:")) {
+            int comma = data.indexOf(',');
+            extensionOf(contentTypeOf(data, comma));
+            decodedSize(data, comma + 1);
+        }
+    }
+
+    /**
+     * Move an inline base64 data URL into the store, leaving only the blob reference (and
+     * taking a reference on the blob, as {@link #put} does).
+     *
+     * @return true if the media was changed
+     * @throws IllegalArgumentException if the upload does not pass {@link #validate}
+     */
+    public boolean externalize(ReviewMedia media) throws IOException {
+        String data = media.getData();
+        if (data == null || !data.startsWith("data:")) {
+            return false; // Already stored, or an external URL
+        }
+        int comma = data.indexOf(',');
+        String contentType = contentTypeOf(data, comma);
+        extensionOf(contentType);
+        byte[] content = new byte[decodedSize(data, comma + 1)];
+        try {
+            int length = Base64.getMimeDecoder().decode(
+                    data.substring(comma + 1).getBytes(StandardCharsets.ISO_8859_1), content);
+            if (length != content.length) {
+                throw new IllegalArgumentException("Invalid base64 media");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid base64 media", e);
+        }
+
+        media.setBlob(put(content, contentType));
+        media.setContentType(contentType.toLowerCase(Locale.ROOT));
+        media.setSize(content.length);
+        media.setData(null);
+        if (media.getType() == null) {
+            media.setType(contentType.startsWith("video/") ? "video" : "image");
+        }
+        return true;
+    }
+
+    /**
+     * The file holding a blob, or null if the ID is malformed or unknown
+     */
+    public Path resolve(String blobId) {
+        if (blobId == null || !BLOB_ID.matcher(blobId).matches()) {
+            return null;
+        }
+        Path path = pathOf(blobId);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    private static String contentTypeOf(String dataUrl, int comma) {
+        String header = comma > 0 ? dataUrl.substring(5, comma) : "";
+        if (!header.endsWith(";base64")) {
+            throw new IllegalArgumentException("Media must be a base64 data URL");
+        }
+        return header.substring(0, header.length() - ";base64".length());
+    }
+
+    private static String extensionOf(String contentType) {
+        String extension = EXTENSIONS.get(contentType.toLowerCase(Locale.ROOT));
+        if (extension == null) {
+            throw new IllegalArgumentException("Unsupported media type: " + contentType
+                    + " (accepted: " + String.join(", ", EXTENSIONS.keySet()) + ")");
+        }
+        return extension;
+    }
+
+    /**
+     * Size of the base64 payload from {@code start} once decoded. Counting first rejects
+     * oversized uploads before anything is allocated for them, and catches the characters
+     * the MIME decoder would otherwise silently skip.
+     */
+    private static int decodedSize(String data, int start) {
+        long digits = 0;
+        int padding = 0;
+        for (int i = start; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '=') {
+                padding++;
+            } else if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '+' || c == '/') {
+                if (padding > 0) {
+                    throw new IllegalArgumentException("Invalid base64 media");
+                }
+                digits++;
+            } else if (c != '\r' && c != '\n' && c != ' ' && c != '\t') {
+                throw new IllegalArgumentException("Invalid base64 media");
+            }
+        }
+        if (digits % 4 == 1 || padding > 2 || padding > 0 && (digits + padding) % 4 != 0) {
+            throw new IllegalArgumentException("Invalid base64 media");
+        }
+        long size = digits * 3 / 4;
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Media files must not be larger than " + MAX_SIZE / (1024 * 1024) + " MB");
+        }
+        return (int) size;
+    }
+
+    public static String contentTypeOf(String blobId) {
+        String extension = blobId.substring(blobId.lastIndexOf('.') + 1);
+        for (Map.Entry<String, String> entry : EXTENSIONS.entrySet()) {
+            if (entry.getValue().equals(extension)) {
+                return entry.getKey();
+            }
+        }
+        return "application/octet-stream";
+    }
+
+    // Fan out over 256 subdirectories so no single directory grows too large
+    private Path pathOf(String blobId) {
+        return root.resolve(blobId.substring(0, 2)).resolve(blobId);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
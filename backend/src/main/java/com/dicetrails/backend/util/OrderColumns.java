@@ -0,0 +1,261 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The order history as parallel primitive arrays (date, status, region, customer), one
+ * row per order, for the one analytics figure the sales buckets cannot give: distinct
+ * customers over a range, which do not add up across buckets.
+ *
+ * Statuses, regions and user IDs are stored as codes into small dictionaries, so a scan
+ * is a loop over arrays with no pointer chasing or string compares; large scans are split
+ * across the common fork-join pool. Rows are appended as orders are added, patched on
+ * status changes and swap-removed on delete, so row order is not date order. Not
+ * thread-safe on its own: DataManager only touches it under the orders lock.
+ */
+public class OrderColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int PARALLEL_THRESHOLD = 1 << 16; // Rows per fork-join leaf task
+
+    private long[] dates = new long[INITIAL_CAPACITY];
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+    private byte[] regions = new byte[INITIAL_CAPACITY];
+    private int[] users = new int[INITIAL_CAPACITY];
+    private Order[] owners = new Order[INITIAL_CAPACITY]; // Row -> order, to move rows on removal
+    private int size;
+
+    private final Map<Order, Integer> rows = new IdentityHashMap<>();
+    private final Dictionary statusCodes = new Dictionary(Byte.MAX_VALUE);
+    private final Dictionary regionCodes = new Dictionary(Byte.MAX_VALUE);
+    private final UserOrdinals userOrdinals = new UserOrdinals();
+
+    /**
+     * Code 0 stands for null (e.g. orders placed before regions were recorded). Statuses and
+     * regions are free text from requests, so once a dictionary is full, new values share
+     * code 1 rather than failing the order that brought them in; that code matches no
+     * filter but its orders still count.
+     */
+    private static final class Dictionary {
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+        final int limit;
+
+        Dictionary(int limit) {
+            this.limit = limit;
+            values.add(null);
+            values.add(null);
+        }
+
+        int codeOf(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                if (values.size() > limit) {
+                    return 1;
+                }
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        void clear() {
+            codes.clear();
+            values.subList(2, values.size()).clear();
+        }
+    }
+
+    /**
+     * Dense ordinals for the user IDs of the rows, counted per row so an ordinal is freed
+     * and reused once the last order of its user is removed. The customer bitsets of a
+     * scan are then bounded by the users who have orders, not by every user ever seen.
+     */
+    private static final class UserOrdinals {
+        final Map<String, Integer> ordinals = new HashMap<>();
+        String[] users = new String[INITIAL_CAPACITY];
+        int[] rowCounts = new int[INITIAL_CAPACITY];
+        int[] free = new int[16];
+        int freeCount;
+        int next;
+
+        int acquire(String userId) {
+            Integer ordinal = ordinals.get(userId);
+            if (ordinal == null) {
+                if (freeCount > 0) {
+                    ordinal = free[--freeCount];
+                } else {
+                    if (next == users.length) {
+                        users = Arrays.copyOf(users, next * 2);
+                        rowCounts = Arrays.copyOf(rowCounts, next * 2);
+                    }
+                    ordinal = next++;
+                }
+                ordinals.put(userId, ordinal);
+                users[ordinal] = userId;
+            }
+            rowCounts[ordinal]++;
+            return ordinal;
+        }
+
+        void release(int ordinal) {
+            if (--rowCounts[ordinal] > 0) {
+                return;
+            }
+            ordinals.remove(users[ordinal]);
+            users[ordinal] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = ordinal;
+        }
+
+        void clear() {
+            ordinals.clear();
+            Arrays.fill(users, 0, next, null);
+            Arrays.fill(rowCounts, 0, next, 0);
+            freeCount = 0;
+            next = 0;
+        }
+    }
+
+    public void add(Order order) {
+        if (rows.containsKey(order)) {
+            return;
+        }
+        if (size == dates.length) {
+            grow();
+        }
+        dates[size] = order.getDate();
+        statuses[size] = (byte) statusCodes.codeOf(order.getStatus());
+        regions[size] = (byte) regionCodes.codeOf(order.getRegion());
+        users[size] = userOrdinals.acquire(order.getUserId());
+        owners[size] = order;
+        rows.put(order, size);
+        size++;
+    }
+
+    /**
+     * Re-read the status of an order already in the store
+     */
+    public void updateStatus(Order order) {
+        Integer row = rows.get(order);
+        if (row != null) {
+            statuses[row] = (byte) statusCodes.codeOf(order.getStatus());
+        }
+    }
+
+    public void remove(Order order) {
+        Integer row = rows.remove(order);
+        if (row == null) {
+            return;
+        }
+        userOrdinals.release(users[row]);
+        int last = --size;
+        if (row != last) {
+            dates[row] = dates[last];
+            statuses[row] = statuses[last];
+            regions[row] = regions[last];
+            users[row] = users[last];
+            owners[row] = owners[last];
+            rows.put(owners[row], row);
+        }
+        owners[last] = null;
+    }
+
+    public void clear() {
+        Arrays.fill(owners, 0, size, null);
+        size = 0;
+        rows.clear();
+        statusCodes.clear();
+        regionCodes.clear();
+        userOrdinals.clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = dates.length * 2;
+        dates = Arrays.copyOf(dates, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        regions = Arrays.copyOf(regions, capacity);
+        users = Arrays.copyOf(users, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+    }
+
+    /**
+     * Distinct users with orders dated in [from, to], optionally of one region and/or
+     * status (ignoring case). Cancelled orders only count when {@code status} asks for
+     * them, as in {@link SalesAnalytics#report}.
+     */
+    public int countCustomers(long from, long to, String region, String status) {
+        List<String> regionNames = regionCodes.values;
+        List<String> statusNames = statusCodes.values;
+        int statusCount = statusNames.size();
+        // Per-(region, status) cell, indexed region * statusCount + status
+        boolean[] counted = new boolean[regionNames.size() * statusCount];
+        for (int cell = 0; cell < counted.length; cell++) {
+            String cellRegion = regionNames.get(cell / statusCount);
+            String cellStatus = statusNames.get(cell % statusCount);
+            counted[cell] = (region == null || region.equalsIgnoreCase(cellRegion))
+                    && (status == null ? !Order.isCancelled(cellStatus) : status.equalsIgnoreCase(cellStatus));
+        }
+        Scan scan = new Scan(from, to, statusCount, counted, 0, size);
+        BitSet customers = size > PARALLEL_THRESHOLD ? ForkJoinPool.commonPool().invoke(scan) : scan.compute();
+        return customers.cardinality();
+    }
+
+    private final class Scan extends RecursiveTask<BitSet> {
+        private final long from;
+        private final long to;
+        private final int statusCount;
+        private final boolean[] counted;
+        private final int start;
+        private final int end;
+
+        Scan(long from, long to, int statusCount, boolean[] counted, int start, int end) {
+            this.from = from;
+            this.to = to;
+            this.statusCount = statusCount;
+            this.counted = counted;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected BitSet compute() {
+            if (end - start > PARALLEL_THRESHOLD) {
+                int middle = (start + end) >>> 1;
+                Scan left = new Scan(from, to, statusCount, counted, start, middle);
+                left.fork();
+                BitSet right = new Scan(from, to, statusCount, counted, middle, end).compute();
+                BitSet merged = left.join();
+                merged.or(right);
+                return merged;
+            }
+            BitSet customers = new BitSet();
+            for (int row = start; row < end; row++) {
+                long date = dates[row];
+                if (date >= from && date <= to && counted[regions[row] * statusCount + statuses[row]]) {
+                    customers.set(users[row]);
+                }
+            }
+            return customers;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * Filters and paging position for {@link DataManager#findOrders(OrderQuery)}.
+ *
+ * Pages are walked with an opaque cursor naming the last order of the previous page,
+ * so orders placed while an admin is paging do not shift later pages around.
+ */
+public class OrderQuery {
+
+    // Order of the date index: by date, then by order ID so equal dates stay distinct
+    static final Comparator<Order> DATE_ORDER = Comparator.comparingLong(Order::getDate)
+            .thenComparing(Order::getOrderId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    public static final class Page {
+        private final List<Order> orders;
+        private final boolean hasMore;
+
+        Page(List<Order> orders, boolean hasMore) {
+            this.orders = orders;
+            this.hasMore = hasMore;
+        }
+
+        public List<Order> getOrders() {
+            return orders;
+        }
+
+        public boolean hasMore() {
+            return hasMore;
+        }
+
+        /**
+         * Cursor for the page after this one, or null on the last page
+         */
+        public String getNextCursor() {
+            return hasMore ? encodeCursor(orders.get(orders.size() - 1)) : null;
+        }
+    }
+
+    private String status;
+    private String region;
+    private Long from;
+    private Long to;
+    private boolean newestFirst = true;
+    private int limit = 50;
+    private Order after;
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public Long getFrom() {
+        return from;
+    }
+
+    /**
+     * Earliest order date to include, in epoch milliseconds
+     */
+    public void setFrom(Long from) {
+        this.from = from;
+    }
+
+    public Long getTo() {
+        return to;
+    }
+
+    /**
+     * Latest order date to include (inclusive), in epoch milliseconds
+     */
+    public void setTo(Long to) {
+        this.to = to;
+    }
+
+    public boolean isNewestFirst() {
+        return newestFirst;
+    }
+
+    public void setNewestFirst(boolean newestFirst) {
+        this.newestFirst = newestFirst;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Continue after the order the cursor points at
+     *
+     * @throws IllegalArgumentException if the cursor was not produced by {@link Page#getNextCursor()}
+     */
+    public void setCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            after = null;
+            return;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            after = probe(Long.parseLong(decoded.substring(0, separator)), decoded.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    Order getAfter() {
+        return after;
+    }
+
+    /**
+     * Status and region filters; the date range is applied through the date index
+     */
+    public boolean matches(Order order) {
+        return (status == null || status.equalsIgnoreCase(order.getStatus()))
+                && (region == null || region.equalsIgnoreCase(order.getRegion()));
+    }
+
+    /**
+     * Status, region and date range filters, for callers not going through the date index
+     */
+    public boolean matchesWithDates(Order order) {
+        return matches(order)
+                && (from == null || order.getDate() >= from)
+                && (to == null || order.getDate() <= to);
+    }
+
+    /**
+     * One page of matching orders from a date index ordered by {@link #DATE_ORDER}. The
+     * cursor may lie outside [from, to] (a cursor from another filter, or hand-made), so it
+     * narrows the bounds instead of taking a sub-view of them, which would throw.
+     */
+    Page page(NavigableSet<Order> byDate) {
+        Order lower = from != null ? probe(from, null) : null;
+        boolean lowerInclusive = true;
+        Order upper = to != null && to < Long.MAX_VALUE ? probe(to + 1, null) : null; // Exclusive
+        if (after != null && newestFirst) {
+            if (upper == null || DATE_ORDER.compare(after, upper) < 0) {
+                upper = after;
+            }
+        } else if (after != null) {
+            if (lower == null || DATE_ORDER.compare(after, lower) >= 0) {
+                lower = after;
+                lowerInclusive = false;
+            }
+        }
+        if (lower != null && upper != null && DATE_ORDER.compare(lower, upper) > 0) {
+            return new Page(new ArrayList<>(), false);
+        }
+
+        NavigableSet<Order> range = byDate;
+        if (lower != null) {
+            range = range.tailSet(lower, lowerInclusive);
+        }
+        if (upper != null) {
+            range = range.headSet(upper, false);
+        }
+        if (newestFirst) {
+            range = range.descendingSet();
+        }
+
+        List<Order> page = new ArrayList<>();
+        for (Order order : range) {
+            if (!matches(order)) {
+                continue;
+            }
+            if (page.size() == limit) {
+                return new Page(page, true);
+            }
+            page.add(order);
+        }
+        return new Page(page, false);
+    }
+
+    static String encodeCursor(Order order) {
+        String raw = order.getDate() + ":" + order.getOrderId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A key-only order for range lookups in the date index; a null ID sorts before any real order on that date
+     */
+    static Order probe(long date, String orderId) {
+        Order order = new Order();
+        order.setDate(date);
+        order.setOrderId(orderId);
+        return order;
+    }
+}
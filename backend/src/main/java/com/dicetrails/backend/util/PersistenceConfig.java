@@ -0,0 +1,155 @@
+package com.dicetrails.backend.util;
+
+/**
+ * Persistence settings for DataManager, read from system properties
+ * (e.g. -Ddicetrails.persistence.mode=write-behind). DataManagerLifecycleListener fills
+ * in the ones not given on the command line from the web.xml context-params.
+ */
+public class PersistenceConfig {
+
+    public enum Mode {
+        SYNC, // Rewrite the whole JSON file on every mutation (default)
+        WRITE_BEHIND, // Mark the collection dirty, flush it at most once per flush interval
+        WAL // Append each mutation to a log, compact into the JSON snapshot in the background
+    }
+
+    public enum Durability {
+        NONE, // Leave flushing to the OS page cache
+        FSYNC // fsync snapshots before they are renamed into place, and every log append
+    }
+
+    public enum SnapshotFormat {
+        JSON, // Pretty-printed JSON files (default)
+        BINARY, // Compact binary files (<name>.bin), faster to load
+        BOTH // Binary for loading, plus the JSON files for export and inspection
+    }
+
+    // Property names, also accepted as context-params in web.xml
+    public static final String MODE_PROPERTY = "dicetrails.persistence.mode";
+    public static final String DURABILITY_PROPERTY = "dicetrails.persistence.durability";
+    public static final String FLUSH_INTERVAL_PROPERTY = "dicetrails.flush.intervalMs";
+    public static final String WAL_COMPACT_THRESHOLD_PROPERTY = "dicetrails.wal.compactThreshold";
+    public static final String WAL_COMPACT_INTERVAL_PROPERTY = "dicetrails.wal.compactIntervalMs";
+    public static final String MEDIA_DIR_PROPERTY = "dicetrails.media.dir";
+    public static final String SNAPSHOT_FORMAT_PROPERTY = "dicetrails.snapshot.format";
+
+    private final Mode mode;
+    private final Durability durability;
+    private final long flushIntervalMs;
+    private final int walCompactThreshold;
+    private final long walCompactIntervalMs;
+    private final String mediaDir;
+    private final SnapshotFormat snapshotFormat;
+
+    public PersistenceConfig(Mode mode, Durability durability, long flushIntervalMs, int walCompactThreshold,
+            long walCompactIntervalMs, String mediaDir, SnapshotFormat snapshotFormat) {
+        this.mode = mode;
+        this.durability = durability;
+        this.flushIntervalMs = flushIntervalMs;
+        this.walCompactThreshold = walCompactThreshold;
+        this.walCompactIntervalMs = walCompactIntervalMs;
+        this.mediaDir = mediaDir;
+        this.snapshotFormat = snapshotFormat;
+    }
+
+    public static PersistenceConfig fromSystemProperties() {
+        Mode mode = parseMode(System.getProperty(MODE_PROPERTY, "sync"));
+        Durability durability = parseDurability(System.getProperty(DURABILITY_PROPERTY, "fsync"));
+        long flushInterval = parseLong(System.getProperty(FLUSH_INTERVAL_PROPERTY), 1000L);
+        int threshold = parseInt(System.getProperty(WAL_COMPACT_THRESHOLD_PROPERTY), 1000);
+        long interval = parseLong(System.getProperty(WAL_COMPACT_INTERVAL_PROPERTY), 30000L);
+        String mediaDir = System.getProperty(MEDIA_DIR_PROPERTY, "media");
+        SnapshotFormat format = parseSnapshotFormat(System.getProperty(SNAPSHOT_FORMAT_PROPERTY, "json"));
+        return new PersistenceConfig(mode, durability, flushInterval, threshold, interval, mediaDir, format);
+    }
+
+    private static Mode parseMode(String value) {
+        String normalized = value.trim().toLowerCase();
+        if ("wal".equals(normalized)) {
+            return Mode.WAL;
+        }
+        if ("write-behind".equals(normalized) || "writebehind".equals(normalized)) {
+            return Mode.WRITE_BEHIND;
+        }
+        return Mode.SYNC;
+    }
+
+    private static Durability parseDurability(String value) {
+        if ("none".equalsIgnoreCase(value.trim())) {
+            return Durability.NONE;
+        }
+        return Durability.FSYNC;
+    }
+
+    private static SnapshotFormat parseSnapshotFormat(String value) {
+        String normalized = value.trim().toLowerCase();
+        if ("binary".equals(normalized)) {
+            return SnapshotFormat.BINARY;
+        }
+        if ("both".equals(normalized)) {
+            return SnapshotFormat.BOTH;
+        }
+        return SnapshotFormat.JSON;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value != null ? Long.parseLong(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public boolean isFsync() {
+        return durability == Durability.FSYNC;
+    }
+
+    /**
+     * Minimum delay between two flushes of the same collection (write-behind mode)
+     */
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    /**
+     * Number of log records after which a collection is folded into a fresh snapshot
+     */
+    public int getWalCompactThreshold() {
+        return walCompactThreshold;
+    }
+
+    public long getWalCompactIntervalMs() {
+        return walCompactIntervalMs;
+    }
+
+    /**
+     * Directory of the review media blob store, relative to the working directory like the JSON files
+     */
+    public String getMediaDir() {
+        return mediaDir;
+    }
+
+    /**
+     * Which snapshot files are written. The binary file is loaded unless the JSON file was
+     * changed since the binary was written, so switching formats converts on the next start.
+     */
+    public SnapshotFormat getSnapshotFormat() {
+        return snapshotFormat;
+    }
+}
@@ -0,0 +1,250 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-facet-value bitsets over the catalogue, so a filter is a handful of bitset
+ * intersections instead of a pass over every product.
+ *
+ * Every product gets a slot (bit position) in catalogue order. Facet counts are
+ * computed the way shop filters show them: each facet is counted against the
+ * filters of all the <em>other</em> facets, so ticking one category still shows
+ * how many products the other categories would add. Not thread-safe on its own:
+ * DataManager only touches it under the products lock.
+ */
+public class ProductFacetIndex {
+
+    public static final String CATEGORY = "category";
+    public static final String SUB_CATEGORY = "subCategory";
+    public static final String DISCOUNT = "discount";
+    public static final String IS_NEW = "isNew";
+    public static final String BESTSELLER = "bestseller";
+    public static final String VISIBILITY = "visibility";
+
+    private static final String[] FACETS = { CATEGORY, SUB_CATEGORY, DISCOUNT, IS_NEW, BESTSELLER, VISIBILITY };
+
+    public static final class Result {
+        private final List<Product> products;
+        private final int total;
+        private final Map<String, Map<String, Integer>> facets;
+
+        Result(List<Product> products, int total, Map<String, Map<String, Integer>> facets) {
+            this.products = products;
+            this.total = total;
+            this.facets = facets;
+        }
+
+        /**
+         * Matching products on the requested page, in catalogue order
+         */
+        public List<Product> getProducts() {
+            return products;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * facet name -> facet value -> number of products the value would match
+         */
+        public Map<String, Map<String, Integer>> getFacets() {
+            return facets;
+        }
+    }
+
+    // facet -> value -> slots
+    private final Map<String, Map<String, BitSet>> bitsets = new HashMap<>();
+    private final Map<Integer, Integer> slotsById = new HashMap<>();
+    private final List<Product> productsBySlot = new ArrayList<>();
+    // Facet values each slot was indexed under, so edits made in place can be undone
+    private final List<String[]> valuesBySlot = new ArrayList<>();
+    private double[] pricesBySlot = new double[16];
+    private final BitSet live = new BitSet();
+
+    public ProductFacetIndex() {
+        for (String facet : FACETS) {
+            bitsets.put(facet, new HashMap<>());
+        }
+    }
+
+    /**
+     * Index a new product, or re-index one that is already indexed in its existing slot
+     */
+    public void add(Product product) {
+        Integer slot = slotsById.get(product.get_id());
+        if (slot == null) {
+            slot = productsBySlot.size();
+            slotsById.put(product.get_id(), slot);
+            productsBySlot.add(null);
+            valuesBySlot.add(null);
+            if (slot == pricesBySlot.length) {
+                pricesBySlot = Arrays.copyOf(pricesBySlot, slot * 2);
+            }
+        } else {
+            clearSlot(slot);
+        }
+
+        String[] values = valuesOf(product);
+        for (int i = 0; i < FACETS.length; i++) {
+            if (values[i] != null) {
+                bitsets.get(FACETS[i]).computeIfAbsent(values[i], value -> new BitSet()).set(slot);
+            }
+        }
+        productsBySlot.set(slot, product);
+        valuesBySlot.set(slot, values);
+        pricesBySlot[slot] = product.getPrice();
+        live.set(slot);
+    }
+
+    public void remove(int productId) {
+        Integer slot = slotsById.remove(productId);
+        if (slot != null) {
+            clearSlot(slot);
+            // Slots are not reused, which keeps slot order equal to catalogue order;
+            // the gaps go away on the next full reindex
+            productsBySlot.set(slot, null);
+            valuesBySlot.set(slot, null);
+        }
+    }
+
+    public void clear() {
+        for (Map<String, BitSet> values : bitsets.values()) {
+            values.clear();
+        }
+        slotsById.clear();
+        productsBySlot.clear();
+        valuesBySlot.clear();
+        live.clear();
+    }
+
+    public Result query(ProductQuery query) {
+        Map<String, BitSet> filters = new HashMap<>();
+        putFilter(filters, CATEGORY, query.getCategories());
+        putFilter(filters, SUB_CATEGORY, query.getSubCategories());
+        putFilter(filters, DISCOUNT, query.getDiscounted());
+        putFilter(filters, IS_NEW, query.getIsNew());
+        putFilter(filters, BESTSELLER, query.getBestseller());
+        if (query.getVisible() != null) {
+            filters.put(VISIBILITY, union(VISIBILITY, visibilityValue(query.getVisible())));
+        }
+
+        BitSet base = (BitSet) live.clone();
+        if (query.getMinPrice() != null || query.getMaxPrice() != null) {
+            // Ranges do not fit per-value bitsets, so check prices of the live slots directly
+            double min = query.getMinPrice() != null ? query.getMinPrice() : Double.NEGATIVE_INFINITY;
+            double max = query.getMaxPrice() != null ? query.getMaxPrice() : Double.POSITIVE_INFINITY;
+            for (int slot = base.nextSetBit(0); slot >= 0; slot = base.nextSetBit(slot + 1)) {
+                if (pricesBySlot[slot] < min || pricesBySlot[slot] > max) {
+                    base.clear(slot);
+                }
+            }
+        }
+
+        BitSet matches = (BitSet) base.clone();
+        for (BitSet filter : filters.values()) {
+            matches.and(filter);
+        }
+
+        Map<String, Map<String, Integer>> facetCounts = new LinkedHashMap<>();
+        for (String facet : FACETS) {
+            BitSet others = (BitSet) base.clone();
+            for (Map.Entry<String, BitSet> filter : filters.entrySet()) {
+                if (!filter.getKey().equals(facet)) {
+                    others.and(filter.getValue());
+                }
+            }
+            Map<String, Integer> counts = new TreeMap<>();
+            for (Map.Entry<String, BitSet> value : bitsets.get(facet).entrySet()) {
+                BitSet hits = (BitSet) value.getValue().clone();
+                hits.and(others);
+                counts.put(value.getKey(), hits.cardinality());
+            }
+            facetCounts.put(facet, counts);
+        }
+
+        List<Product> page = new ArrayList<>();
+        int skipped = 0;
+        for (int slot = matches.nextSetBit(0); slot >= 0 && page.size() < query.getLimit();
+                slot = matches.nextSetBit(slot + 1)) {
+            if (skipped++ >= query.getOffset()) {
+                page.add(productsBySlot.get(slot));
+            }
+        }
+        return new Result(page, matches.cardinality(), facetCounts);
+    }
+
+    private void clearSlot(int slot) {
+        String[] values = valuesBySlot.get(slot);
+        if (values != null) {
+            for (int i = 0; i < FACETS.length; i++) {
+                Map<String, BitSet> facet = bitsets.get(FACETS[i]);
+                BitSet bits = values[i] != null ? facet.get(values[i]) : null;
+                if (bits != null) {
+                    bits.clear(slot);
+                    if (bits.isEmpty()) {
+                        facet.remove(values[i]); // Drop values no product has any more
+                    }
+                }
+            }
+        }
+        live.clear(slot);
+    }
+
+    private void putFilter(Map<String, BitSet> filters, String facet, List<String> values) {
+        if (values != null && !values.isEmpty()) {
+            String[] normalized = new String[values.size()];
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] = normalize(values.get(i));
+            }
+            filters.put(facet, union(facet, normalized));
+        }
+    }
+
+    private void putFilter(Map<String, BitSet> filters, String facet, Boolean value) {
+        if (value != null) {
+            filters.put(facet, union(facet, String.valueOf(value)));
+        }
+    }
+
+    private BitSet union(String facet, String... values) {
+        BitSet result = new BitSet();
+        for (String value : values) {
+            BitSet bits = bitsets.get(facet).get(value);
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    private static String[] valuesOf(Product product) {
+        return new String[] {
+                normalize(product.getCategory()),
+                normalize(product.getSubCategory()),
+                String.valueOf(product.getDiscount() > 0),
+                String.valueOf(product.isNew()),
+                String.valueOf(product.isBestseller()),
+                visibilityValue(product.isVisible())
+        };
+    }
+
+    private static String visibilityValue(boolean visible) {
+        return visible ? "visible" : "hidden";
+    }
+
+    // Category values are matched case-insensitively
+    private static String normalize(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
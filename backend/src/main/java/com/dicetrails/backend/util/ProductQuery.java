@@ -0,0 +1,106 @@
+package com.dicetrails.backend.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Catalogue filters for {@link DataManager#filterProducts(ProductQuery)}. Several values
+ * for one facet match any of them; different facets must all match. Unset filters
+ * (null / empty) match everything.
+ */
+public class ProductQuery {
+
+    private List<String> categories = new ArrayList<>();
+    private List<String> subCategories = new ArrayList<>();
+    private Double minPrice;
+    private Double maxPrice;
+    private Boolean discounted;
+    private Boolean isNew;
+    private Boolean bestseller;
+    private Boolean visible;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    public List<String> getSubCategories() {
+        return subCategories;
+    }
+
+    public void setSubCategories(List<String> subCategories) {
+        this.subCategories = subCategories;
+    }
+
+    public Double getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(Double minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public Double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(Double maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public Boolean getDiscounted() {
+        return discounted;
+    }
+
+    /**
+     * true: only products with a discount above 0%; false: only full-price products
+     */
+    public void setDiscounted(Boolean discounted) {
+        this.discounted = discounted;
+    }
+
+    public Boolean getIsNew() {
+        return isNew;
+    }
+
+    public void setIsNew(Boolean isNew) {
+        this.isNew = isNew;
+    }
+
+    public Boolean getBestseller() {
+        return bestseller;
+    }
+
+    public void setBestseller(Boolean bestseller) {
+        this.bestseller = bestseller;
+    }
+
+    public Boolean getVisible() {
+        return visible;
+    }
+
+    public void setVisible(Boolean visible) {
+        this.visible = visible;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+}
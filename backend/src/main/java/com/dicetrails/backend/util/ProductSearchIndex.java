@@ -0,0 +1,181 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Inverted index over product name, description, category and subCategory.
+ *
+ * Terms are kept sorted so a query word also matches every term it is a prefix of
+ * ("mono" finds "monopoly"). Every query word has to match; results are ranked by
+ * TF-IDF with name and category hits weighted above description hits. Not thread-safe
+ * on its own: DataManager only touches it under the products lock.
+ */
+public class ProductSearchIndex {
+
+    /**
+     * One page of search hits plus the total number of matches across all pages
+     */
+    public static final class Result<T> {
+        private final List<T> items;
+        private final int total;
+
+        public Result(List<T> items, int total) {
+            this.items = items;
+            this.total = total;
+        }
+
+        /**
+         * Hits on the requested page, best match first
+         */
+        public List<T> getItems() {
+            return items;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    // A prefix hit counts for less than the whole word
+    private static final double PREFIX_FACTOR = 0.5;
+
+    // term -> (product ID -> weighted term frequency)
+    private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+    // product ID -> its terms, so a product can be removed without re-reading its fields
+    private final Map<Integer, Set<String>> documentTerms = new HashMap<>();
+
+    public void add(Product product) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        addTokens(frequencies, product.getName(), NAME_WEIGHT);
+        addTokens(frequencies, product.getCategory(), CATEGORY_WEIGHT);
+        addTokens(frequencies, product.getSubCategory(), CATEGORY_WEIGHT);
+        addTokens(frequencies, product.getDescription(), DESCRIPTION_WEIGHT);
+
+        int productId = product.get_id();
+        remove(productId);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(productId, entry.getValue());
+        }
+        documentTerms.put(productId, frequencies.keySet());
+    }
+
+    public void remove(int productId) {
+        Set<String> terms = documentTerms.remove(productId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Integer, Integer> docs = postings.get(term);
+            docs.remove(productId);
+            if (docs.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        documentTerms.clear();
+    }
+
+    /**
+     * Products matching every word of the query, best first, skipping those the filter rejects
+     */
+    public Result<Integer> search(String query, int offset, int limit, IntPredicate include) {
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (words.isEmpty() || documentTerms.isEmpty()) {
+            return new Result<>(Collections.emptyList(), 0);
+        }
+
+        Map<Integer, Double> scores = null;
+        for (String word : words) {
+            Map<Integer, Double> wordScores = scoreWord(word);
+            if (scores == null) {
+                scores = wordScores;
+            } else {
+                scores.keySet().retainAll(wordScores.keySet());
+                for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                    entry.setValue(entry.getValue() + wordScores.get(entry.getKey()));
+                }
+            }
+            if (scores.isEmpty()) {
+                return new Result<>(Collections.emptyList(), 0);
+            }
+        }
+
+        List<Map.Entry<Integer, Double>> ranked = new ArrayList<>();
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            if (include.test(entry.getKey())) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort((a, b) -> !a.getValue().equals(b.getValue())
+                ? Double.compare(b.getValue(), a.getValue())
+                : Integer.compare(a.getKey(), b.getKey()));
+
+        List<Integer> page = new ArrayList<>();
+        for (int i = offset; i < ranked.size() && page.size() < limit; i++) {
+            page.add(ranked.get(i).getKey());
+        }
+        return new Result<>(page, ranked.size());
+    }
+
+    private Map<Integer, Double> scoreWord(String word) {
+        Map<Integer, Double> scores = new HashMap<>();
+        // Every term starting with the word: the word itself first, then its extensions
+        for (Map.Entry<String, Map<Integer, Integer>> entry
+                : postings.subMap(word, true, word + Character.MAX_VALUE, false).entrySet()) {
+            Map<Integer, Integer> docs = entry.getValue();
+            double idf = Math.log(1.0 + (double) documentTerms.size() / docs.size());
+            double factor = entry.getKey().equals(word) ? 1.0 : PREFIX_FACTOR;
+            for (Map.Entry<Integer, Integer> doc : docs.entrySet()) {
+                double score = doc.getValue() * idf * factor;
+                // A product matching several extensions counts its best one
+                scores.merge(doc.getKey(), score, Math::max);
+            }
+        }
+        return scores;
+    }
+
+    private static void addTokens(Map<String, Integer> frequencies, String text, int weight) {
+        for (String token : tokenize(text)) {
+            frequencies.merge(token, weight, Integer::sum);
+        }
+    }
+
+    /**
+     * Lower-cased runs of letters and digits
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,77 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Review;
+
+/**
+ * Running rating statistics for one product: review count, mean rating, star
+ * histogram and number of reviews with photos or videos. DataManager keeps one per
+ * product, updated as reviews are added and removed; callers get copies.
+ */
+public class RatingSummary {
+
+    private final String productId;
+    private int count;
+    private double average;
+    // histogram[0] is the number of 1-star reviews, histogram[4] of 5-star reviews
+    private final int[] histogram = new int[5];
+    private int mediaCount;
+    private transient long ratingSum;
+
+    public RatingSummary(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public int[] getHistogram() {
+        return histogram.clone();
+    }
+
+    public int getMediaCount() {
+        return mediaCount;
+    }
+
+    /**
+     * The star bucket a review counts under: its rating, clamped to 1..5 since older
+     * reviews may have been saved without one. Every rating filter goes through this so
+     * counts and listed reviews agree.
+     */
+    static int stars(Review review) {
+        return Math.max(1, Math.min(5, review.getRating()));
+    }
+
+    /**
+     * Count a review in (delta 1) or out (delta -1)
+     */
+    void apply(Review review, int delta) {
+        int stars = stars(review);
+        count += delta;
+        ratingSum += (long) delta * stars;
+        histogram[stars - 1] += delta;
+        if (review.isHasMedia()) {
+            mediaCount += delta;
+        }
+        // Kept exact in ratingSum; the exposed mean is rounded to 2 decimals
+        average = count > 0 ? Math.round(ratingSum * 100.0 / count) / 100.0 : 0;
+    }
+
+    RatingSummary copy() {
+        RatingSummary copy = new RatingSummary(productId);
+        copy.count = count;
+        copy.average = average;
+        System.arraycopy(histogram, 0, copy.histogram, 0, histogram.length);
+        copy.mediaCount = mediaCount;
+        copy.ratingSum = ratingSum;
+        return copy;
+    }
+}
@@ -0,0 +1,173 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Review;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Reviews kept pre-sorted for listing, per product and across all products.
+ *
+ * Each listing holds one sorted set per sort order, updated on insert and removal,
+ * so the first page of "most helpful" only walks as far as the page reaches. Sort
+ * keys are captured when a review is indexed. Not thread-safe on its own: DataManager
+ * only touches it under the reviews lock.
+ */
+public class ReviewListingIndex {
+
+    private static final class Entry {
+        final Review review;
+        final long sequence; // Insertion order, also the final tie-breaker
+        final int helpful;
+        final long date;
+        final int rating;
+
+        Entry(Review review, long sequence) {
+            this.review = review;
+            this.sequence = sequence;
+            this.helpful = review.getHelpful();
+            this.date = parseDate(review.getDate());
+            this.rating = review.getRating();
+        }
+    }
+
+    private static final Comparator<Entry> BY_SEQUENCE = Comparator.comparingLong(e -> e.sequence);
+    private static final Comparator<Entry> BY_DATE = Comparator.<Entry>comparingLong(e -> e.date).thenComparing(BY_SEQUENCE);
+    // Descending orders are stored as such so their natural iteration is the common case
+    private static final Comparator<Entry> BY_HELPFUL = Comparator.<Entry>comparingInt(e -> -e.helpful)
+            .thenComparing(BY_DATE.reversed());
+    private static final Comparator<Entry> BY_RATING = Comparator.<Entry>comparingInt(e -> -e.rating)
+            .thenComparing(BY_DATE.reversed());
+
+    private static final class Listing {
+        final TreeSet<Entry> bySequence = new TreeSet<>(BY_SEQUENCE);
+        final TreeSet<Entry> byDate = new TreeSet<>(BY_DATE);
+        final TreeSet<Entry> byHelpful = new TreeSet<>(BY_HELPFUL);
+        final TreeSet<Entry> byRating = new TreeSet<>(BY_RATING);
+
+        void add(Entry entry) {
+            bySequence.add(entry);
+            byDate.add(entry);
+            byHelpful.add(entry);
+            byRating.add(entry);
+        }
+
+        void remove(Entry entry) {
+            bySequence.remove(entry);
+            byDate.remove(entry);
+            byHelpful.remove(entry);
+            byRating.remove(entry);
+        }
+
+        NavigableSet<Entry> sorted(ReviewQuery.Sort sort) {
+            switch (sort) {
+                case HELPFUL:
+                    return byHelpful;
+                case RECENT:
+                    return byDate.descendingSet();
+                case OLDEST:
+                    return byDate;
+                case HIGHEST:
+                    return byRating;
+                case LOWEST:
+                    return byRating.descendingSet();
+                default:
+                    return bySequence;
+            }
+        }
+    }
+
+    private final Listing all = new Listing();
+    private final Map<String, Listing> byProduct = new HashMap<>();
+    private final Map<Review, Entry> entries = new IdentityHashMap<>();
+    private long nextSequence;
+
+    public void add(Review review) {
+        Entry entry = new Entry(review, nextSequence++);
+        entries.put(review, entry);
+        all.add(entry);
+        byProduct.computeIfAbsent(review.getProductId(), id -> new Listing()).add(entry);
+    }
+
+    public void remove(Review review) {
+        Entry entry = entries.remove(review);
+        if (entry == null) {
+            return;
+        }
+        all.remove(entry);
+        Listing listing = byProduct.get(review.getProductId());
+        if (listing != null) {
+            listing.remove(entry);
+            if (listing.bySequence.isEmpty()) {
+                byProduct.remove(review.getProductId());
+            }
+        }
+    }
+
+    public void clear() {
+        all.bySequence.clear();
+        all.byDate.clear();
+        all.byHelpful.clear();
+        all.byRating.clear();
+        byProduct.clear();
+        entries.clear();
+        nextSequence = 0;
+    }
+
+    /**
+     * Reviews of one product (or all products for null) in the given order
+     */
+    public Iterator<Review> iterate(String productId, ReviewQuery.Sort sort) {
+        Listing listing = productId == null ? all : byProduct.get(productId);
+        if (listing == null) {
+            return Collections.emptyIterator();
+        }
+        Iterator<Entry> entries = listing.sorted(sort).iterator();
+        return new Iterator<Review>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Review next() {
+                return entries.next().review;
+            }
+        };
+    }
+
+    public int size(String productId) {
+        Listing listing = productId == null ? all : byProduct.get(productId);
+        return listing == null ? 0 : listing.bySequence.size();
+    }
+
+    /**
+     * Review dates are ISO-8601 from the review forms, or Date.toString() from older
+     * server-side defaults; anything unreadable sorts as oldest
+     */
+    static long parseDate(String date) {
+        if (date == null || date.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Instant.parse(date).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.ENGLISH).parse(date).getTime();
+            } catch (ParseException ignored) {
+                return 0;
+            }
+        }
+    }
+}
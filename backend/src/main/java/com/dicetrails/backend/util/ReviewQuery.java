@@ -0,0 +1,146 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Review;
+
+import java.util.List;
+
+/**
+ * Sort order, filters and page for {@link DataManager#findReviews(ReviewQuery)}.
+ */
+public class ReviewQuery {
+
+    public enum Sort {
+        DEFAULT("default"), // Order the reviews were written in
+        HELPFUL("helpful"), // Most helpful votes first
+        RECENT("recent"),
+        OLDEST("oldest"),
+        HIGHEST("highest"), // Highest rating first
+        LOWEST("lowest");
+
+        private final String param;
+
+        Sort(String param) {
+            this.param = param;
+        }
+
+        /**
+         * Parses the {@code sort} request parameter; unknown values fall back to DEFAULT.
+         * Also accepts the frontend's "high"/"low" and "date" as an alias of "recent".
+         */
+        public static Sort fromParam(String value) {
+            if (value == null) {
+                return DEFAULT;
+            }
+            String normalized = value.trim().toLowerCase();
+            switch (normalized) {
+                case "date":
+                    return RECENT;
+                case "high":
+                    return HIGHEST;
+                case "low":
+                    return LOWEST;
+                default:
+                    for (Sort sort : values()) {
+                        if (sort.param.equals(normalized)) {
+                            return sort;
+                        }
+                    }
+                    return DEFAULT;
+            }
+        }
+    }
+
+    public static final class Page {
+        private final List<Review> reviews;
+        private final int total;
+
+        Page(List<Review> reviews, int total) {
+            this.reviews = reviews;
+            this.total = total;
+        }
+
+        public List<Review> getReviews() {
+            return reviews;
+        }
+
+        /**
+         * Number of reviews matching the filters across all pages
+         */
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    private String productId;
+    private Sort sort = Sort.DEFAULT;
+    private Boolean hasMedia;
+    private Integer rating;
+    private int offset;
+    private int limit = 10;
+
+    public String getProductId() {
+        return productId;
+    }
+
+    /**
+     * Restrict to one product; null lists reviews of all products
+     */
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public void setSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    public Boolean getHasMedia() {
+        return hasMedia;
+    }
+
+    public void setHasMedia(Boolean hasMedia) {
+        this.hasMedia = hasMedia;
+    }
+
+    public Integer getRating() {
+        return rating;
+    }
+
+    /**
+     * Only reviews with exactly this many stars
+     */
+    public void setRating(Integer rating) {
+        this.rating = rating;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public boolean isFiltered() {
+        return hasMedia != null || rating != null;
+    }
+
+    /**
+     * Ratings compare by star bucket, as the rating histogram counts them
+     */
+    public boolean matches(Review review) {
+        return (hasMedia == null || review.isHasMedia() == hasMedia)
+                && (rating == null || RatingSummary.stars(review) == rating);
+    }
+}
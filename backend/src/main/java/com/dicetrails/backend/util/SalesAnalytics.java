@@ -0,0 +1,324 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.OrderItem;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Sales totals per hour, day and month (UTC), split by delivery region and order status.
+ *
+ * Every order adds its total, units, shipping fee and discount flags to one cell of its
+ * hour, day and month bucket. Status changes move it between cells and deletes take it
+ * back out, so a report only reads the buckets it covers and never the order history.
+ * Not thread-safe on its own: DataManager only touches it under the orders lock.
+ */
+public class SalesAnalytics {
+
+    public enum Granularity {
+        HOUR("hour", 48),
+        DAY("day", 30),
+        MONTH("month", 12);
+
+        private static final long HOUR_MS = 60L * 60 * 1000;
+        private static final long DAY_MS = 24 * HOUR_MS;
+
+        private final String param;
+        private final int defaultBuckets;
+
+        Granularity(String param, int defaultBuckets) {
+            this.param = param;
+            this.defaultBuckets = defaultBuckets;
+        }
+
+        public String getParam() {
+            return param;
+        }
+
+        /**
+         * Number of buckets a report covers when no start date is given
+         */
+        public int getDefaultBuckets() {
+            return defaultBuckets;
+        }
+
+        /**
+         * Parses the {@code granularity} request parameter; returns null if unknown
+         */
+        public static Granularity fromParam(String value) {
+            for (Granularity granularity : values()) {
+                if (granularity.param.equalsIgnoreCase(value)) {
+                    return granularity;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Start of the bucket containing {@code time}
+         */
+        public long floor(long time) {
+            switch (this) {
+                case HOUR:
+                    return time - Math.floorMod(time, HOUR_MS);
+                case DAY:
+                    return time - Math.floorMod(time, DAY_MS);
+                default:
+                    return ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC)
+                            .truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).toInstant().toEpochMilli();
+            }
+        }
+
+        /**
+         * Start of the bucket {@code count} buckets after the one starting at {@code start}
+         */
+        public long plus(long start, int count) {
+            switch (this) {
+                case HOUR:
+                    return start + count * HOUR_MS;
+                case DAY:
+                    return start + count * DAY_MS;
+                default:
+                    return ZonedDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneOffset.UTC)
+                            .plusMonths(count).toInstant().toEpochMilli();
+            }
+        }
+    }
+
+    /**
+     * What a set of orders adds up to. Serialized as is into analytics responses.
+     */
+    public static final class Metrics {
+        private int orders;
+        private double revenue;
+        private long units;
+        private double shippingFees;
+        private int voucherOrders; // Orders that redeemed a voucher
+        private int newsletterOrders; // Orders that used the newsletter discount
+        private Double averageOrderValue; // Only filled in on reports
+
+        private void add(Order order, int orderUnits, int delta) {
+            orders += delta;
+            revenue += delta * order.getTotalAmount();
+            units += (long) delta * orderUnits;
+            shippingFees += delta * order.getShippingFee();
+            if (order.getVoucherCode() != null && !order.getVoucherCode().isEmpty()) {
+                voucherOrders += delta;
+            }
+            if (order.isNewsletterDiscountApplied()) {
+                newsletterOrders += delta;
+            }
+        }
+
+        private void addAll(Metrics other) {
+            orders += other.orders;
+            revenue += other.revenue;
+            units += other.units;
+            shippingFees += other.shippingFees;
+            voucherOrders += other.voucherOrders;
+            newsletterOrders += other.newsletterOrders;
+        }
+
+        private Metrics finish() {
+            averageOrderValue = orders > 0 ? revenue / orders : 0;
+            return this;
+        }
+
+        public int getOrders() {
+            return orders;
+        }
+
+        public double getRevenue() {
+            return revenue;
+        }
+
+        public long getUnits() {
+            return units;
+        }
+
+        public double getShippingFees() {
+            return shippingFees;
+        }
+
+        public int getVoucherOrders() {
+            return voucherOrders;
+        }
+
+        public int getNewsletterOrders() {
+            return newsletterOrders;
+        }
+    }
+
+    private static final class Cell {
+        final String region;
+        final String status;
+
+        Cell(String region, String status) {
+            this.region = region;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Cell)) {
+                return false;
+            }
+            Cell other = (Cell) o;
+            return Objects.equals(region, other.region) && Objects.equals(status, other.status);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(region, status);
+        }
+    }
+
+    /**
+     * One bucket of a report: totals plus the same split by region and by status
+     */
+    public static final class Bucket {
+        private final long start;
+        private final Metrics totals = new Metrics();
+        private final Map<String, Metrics> byRegion = new LinkedHashMap<>();
+        private final Map<String, Metrics> byStatus = new LinkedHashMap<>();
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public Metrics getTotals() {
+            return totals;
+        }
+
+        public Map<String, Metrics> getByRegion() {
+            return byRegion;
+        }
+
+        public Map<String, Metrics> getByStatus() {
+            return byStatus;
+        }
+    }
+
+    public static final class Report {
+        private final String granularity;
+        private final long from;
+        private final long to;
+        private final Metrics totals = new Metrics();
+        private final List<Bucket> buckets = new ArrayList<>();
+
+        Report(Granularity granularity, long from, long to) {
+            this.granularity = granularity.getParam();
+            this.from = from;
+            this.to = to;
+        }
+
+        public Metrics getTotals() {
+            return totals;
+        }
+
+        public List<Bucket> getBuckets() {
+            return buckets;
+        }
+    }
+
+    public static final int MAX_BUCKETS = 1000;
+
+    private final Map<Granularity, TreeMap<Long, Map<Cell, Metrics>>> buckets = new EnumMap<>(Granularity.class);
+
+    public SalesAnalytics() {
+        for (Granularity granularity : Granularity.values()) {
+            buckets.put(granularity, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Add (delta 1) or take back (delta -1) an order as counted under {@code status}
+     */
+    public void record(Order order, String status, int delta) {
+        int units = 0;
+        if (order.getItems() != null) {
+            for (OrderItem item : order.getItems()) {
+                units += Math.max(0, item.getQuantity());
+            }
+        }
+        Cell cell = new Cell(order.getRegion(), status);
+        for (Granularity granularity : Granularity.values()) {
+            TreeMap<Long, Map<Cell, Metrics>> series = buckets.get(granularity);
+            long start = granularity.floor(order.getDate());
+            Map<Cell, Metrics> cells = series.computeIfAbsent(start, key -> new HashMap<>());
+            Metrics metrics = cells.computeIfAbsent(cell, key -> new Metrics());
+            metrics.add(order, units, delta);
+            if (metrics.orders <= 0) {
+                cells.remove(cell);
+                if (cells.isEmpty()) {
+                    series.remove(start);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (TreeMap<Long, Map<Cell, Metrics>> series : buckets.values()) {
+            series.clear();
+        }
+    }
+
+    /**
+     * Every bucket overlapping [from, to], empty ones included, so charts need no gap
+     * filling. Totals leave out cancelled orders unless {@code status} asks for them;
+     * {@code byStatus} always shows every status. Null filters match everything.
+     *
+     * @throws IllegalArgumentException if the range spans more than {@link #MAX_BUCKETS} buckets
+     */
+    public Report report(Granularity granularity, long from, long to, String region, String status) {
+        Report report = new Report(granularity, from, to);
+        TreeMap<Long, Map<Cell, Metrics>> series = buckets.get(granularity);
+        long start = granularity.floor(from);
+        for (int index = 0; start <= to; start = granularity.plus(start, 1)) {
+            if (++index > MAX_BUCKETS) {
+                throw new IllegalArgumentException("Range covers more than " + MAX_BUCKETS + " "
+                        + granularity.getParam() + " buckets");
+            }
+            Bucket bucket = new Bucket(start);
+            Map<Cell, Metrics> cells = series.get(start);
+            if (cells != null) {
+                for (Map.Entry<Cell, Metrics> entry : cells.entrySet()) {
+                    Cell cell = entry.getKey();
+                    if (region != null && !region.equalsIgnoreCase(cell.region)
+                            || status != null && !status.equalsIgnoreCase(cell.status)) {
+                        continue;
+                    }
+                    Metrics metrics = entry.getValue();
+                    bucket.byStatus.computeIfAbsent(cell.status, key -> new Metrics()).addAll(metrics);
+                    if (status == null && Order.isCancelled(cell.status)) {
+                        continue;
+                    }
+                    bucket.totals.addAll(metrics);
+                    bucket.byRegion.computeIfAbsent(cell.region, key -> new Metrics()).addAll(metrics);
+                }
+            }
+            bucket.totals.finish();
+            bucket.byRegion.values().forEach(Metrics::finish);
+            bucket.byStatus.values().forEach(Metrics::finish);
+            report.totals.addAll(bucket.totals);
+            report.buckets.add(bucket);
+        }
+        report.totals.finish();
+        return report;
+    }
+}
@@ -0,0 +1,187 @@
+package com.dicetrails.backend.util;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a JSON array snapshot one record at a time, so memory use while loading is one
+ * read buffer and one record on top of the records themselves, however large the file.
+ *
+ * A record that does not bind to the model (a wrong type, a bad number) is logged and
+ * skipped, and reading resumes at the next record. A syntax error or a truncated file
+ * ends the load with the records read so far. Either way the original file is copied to
+ * {@code <file>.corrupt} before the next snapshot can overwrite it. Collections that must
+ * not run on part of their records read with {@code partialAllowed} false instead, and
+ * any damage fails the read.
+ */
+public class StreamingJsonLoader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_MIN_SIZE = 16 * 1024 * 1024; // Smaller files load too fast to report on
+    private static final Pattern RECORD_LEVEL = Pattern.compile("\\$\\[\\d+\\]");
+
+    private StreamingJsonLoader() {
+    }
+
+    /**
+     * @param onRecord called with each record as soon as it is read, e.g. to build indexes in the same pass
+     */
+    public static <T> List<T> read(Path file, Gson gson, Class<T> elementType, Consumer<T> onRecord)
+            throws IOException {
+        return read(file, gson, elementType, onRecord, true);
+    }
+
+    /**
+     * @param partialAllowed whether to skip unreadable records and stop at a syntax error,
+     *        or to fail on the first of either
+     * @throws IOException if {@code partialAllowed} is false and the file is damaged; the
+     *         file is left as it is
+     */
+    public static <T> List<T> read(Path file, Gson gson, Class<T> elementType, Consumer<T> onRecord,
+            boolean partialAllowed) throws IOException {
+        String name = file.getFileName().toString();
+        long size = Files.size(file);
+        long started = System.nanoTime();
+        TypeAdapter<T> adapter = gson.getAdapter(elementType);
+        List<T> records = new ArrayList<>();
+        int skipped = 0;
+        boolean truncated = false;
+
+        try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(file));
+                JsonReader reader = new JsonReader(new InputStreamReader(
+                        new BufferedInputStream(counter, BUFFER_SIZE), StandardCharsets.UTF_8))) {
+            reader.setLenient(true); // As Gson.fromJson reads
+            if (reader.peek() == JsonToken.NULL) {
+                return records;
+            }
+            reader.beginArray();
+            int reported = 0;
+            while (reader.hasNext()) {
+                String path = reader.getPath();
+                T record;
+                try {
+                    record = adapter.read(reader);
+                } catch (RuntimeException e) {
+                    if (!partialAllowed) {
+                        throw new IOException("Record " + path + " of " + name + " could not be read: "
+                                + e.getMessage(), e);
+                    }
+                    skipped++;
+                    System.out.println("Skipping unreadable record " + path + " of " + name + ": " + e.getMessage());
+                    skipRestOfRecord(reader, path);
+                    continue;
+                }
+                if (record != null) {
+                    // Read fine, so a failure here is a bug in the caller's indexing, not bad data:
+                    // let it fail the load rather than keep a record the indexes do not know
+                    records.add(record);
+                    onRecord.accept(record);
+                }
+
+                if (size >= PROGRESS_MIN_SIZE && counter.count * 10 / size > reported) {
+                    reported = (int) (counter.count * 10 / size);
+                    System.out.println("Loading " + name + ": " + Math.min(100, reported * 10) + "% ("
+                            + records.size() + " records)");
+                }
+            }
+            reader.endArray();
+        } catch (MalformedJsonException | EOFException e) {
+            if (!partialAllowed) {
+                throw new IOException(name + " is damaged after " + records.size() + " records: " + e.getMessage(), e);
+            }
+            truncated = true;
+            System.out.println("Stopped reading " + name + " after " + records.size() + " records: " + e.getMessage());
+        }
+
+        if (size >= PROGRESS_MIN_SIZE) {
+            System.out.println("Loaded " + records.size() + " records from " + name + " in "
+                    + (System.nanoTime() - started) / 1000000 + " ms");
+        }
+        if (skipped > 0 || truncated) {
+            Path backup = file.resolveSibling(name + ".corrupt");
+            Files.copy(file, backup, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println(name + ": " + skipped + " records skipped" + (truncated ? ", rest of file unreadable" : "")
+                    + "; original kept as " + backup.getFileName());
+        }
+        return records;
+    }
+
+    /**
+     * Move the reader past a record whose binding failed part-way, to the next record of the array
+     */
+    private static void skipRestOfRecord(JsonReader reader, String recordPath) throws IOException {
+        if (reader.getPath().equals(recordPath)) {
+            // Failed before consuming anything, e.g. a string where an object belongs
+            reader.skipValue();
+            return;
+        }
+        while (!RECORD_LEVEL.matcher(reader.getPath()).matches()) {
+            switch (reader.peek()) {
+                case END_OBJECT:
+                    reader.endObject();
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    break;
+                case NAME:
+                    reader.nextName();
+                    break;
+                case END_DOCUMENT:
+                    throw new EOFException("End of input inside record " + recordPath);
+                default:
+                    reader.skipValue();
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.dicetrails.backend.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Units sold per product over sliding windows (last 24 hours, 7 days, 30 days).
+ *
+ * Each product has a ring of hourly buckets covering the longest window, and every window
+ * keeps its own {@link BestSellerRanking}. When the clock moves into a new hour, the bucket
+ * that just fell out of each window is subtracted from that window's ranking, so a top-K
+ * query never has to look at order history.
+ */
+public class TrendingProducts {
+
+    public enum Window {
+        DAY("24h", 24),
+        WEEK("7d", 7 * 24),
+        MONTH("30d", 30 * 24);
+
+        private final String param;
+        private final int hours;
+
+        Window(String param, int hours) {
+            this.param = param;
+            this.hours = hours;
+        }
+
+        public String getParam() {
+            return param;
+        }
+
+        /**
+         * Parses the {@code window} request parameter, e.g. "7d"; returns null if unknown
+         */
+        public static Window fromParam(String value) {
+            for (Window window : values()) {
+                if (window.param.equalsIgnoreCase(value)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final long HOUR_MS = 60L * 60 * 1000;
+    private static final int RING_HOURS = Window.MONTH.hours;
+
+    private final Map<Integer, int[]> buckets = new HashMap<>();
+    private final BestSellerRanking[] rankings = new BestSellerRanking[Window.values().length];
+    private long currentHour;
+
+    public TrendingProducts() {
+        for (int i = 0; i < rankings.length; i++) {
+            rankings[i] = new BestSellerRanking();
+        }
+        currentHour = System.currentTimeMillis() / HOUR_MS;
+    }
+
+    /**
+     * Add (or, with a negative quantity, take back) units sold at {@code timestamp}.
+     * Sales older than the longest window are ignored.
+     */
+    public synchronized void record(int productId, long timestamp, int quantity, long now) {
+        advanceTo(now);
+        // Clamp timestamps from the future (clock skew) into the current hour
+        long hour = Math.min(timestamp / HOUR_MS, currentHour);
+        long age = currentHour - hour;
+        if (age >= RING_HOURS) {
+            return;
+        }
+        int[] ring = buckets.computeIfAbsent(productId, id -> new int[RING_HOURS]);
+        ring[slot(hour)] += quantity;
+        for (Window window : Window.values()) {
+            if (age < window.hours) {
+                rankings[window.ordinal()].record(productId, quantity);
+            }
+        }
+    }
+
+    public synchronized List<Integer> topProductIds(Window window, int limit, IntPredicate include, long now) {
+        advanceTo(now);
+        return rankings[window.ordinal()].topProductIds(limit, include);
+    }
+
+    public synchronized void clear() {
+        buckets.clear();
+        for (BestSellerRanking ranking : rankings) {
+            ranking.clear();
+        }
+        currentHour = System.currentTimeMillis() / HOUR_MS;
+    }
+
+    /**
+     * Expire the buckets that slid out of each window between the last call and now
+     */
+    private void advanceTo(long now) {
+        long hour = now / HOUR_MS;
+        if (hour <= currentHour) {
+            return;
+        }
+        if (hour - currentHour >= RING_HOURS) {
+            // Everything has expired
+            buckets.clear();
+            for (BestSellerRanking ranking : rankings) {
+                ranking.clear();
+            }
+            currentHour = hour;
+            return;
+        }
+        while (currentHour < hour) {
+            currentHour++;
+            for (Map.Entry<Integer, int[]> entry : buckets.entrySet()) {
+                int[] ring = entry.getValue();
+                for (Window window : Window.values()) {
+                    // Read before clearing: for the longest window this is the slot being reused
+                    int expired = ring[slot(currentHour - window.hours)];
+                    if (expired != 0) {
+                        rankings[window.ordinal()].record(entry.getKey(), -expired);
+                    }
+                }
+                ring[slot(currentHour)] = 0;
+            }
+        }
+        buckets.values().removeIf(TrendingProducts::isEmpty);
+    }
+
+    private static int slot(long hour) {
+        return (int) (hour % RING_HOURS);
+    }
+
+    private static boolean isEmpty(int[] ring) {
+        for (int count : ring) {
+            if (count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,141 @@
+package com.dicetrails.backend.util;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A JSON response rendered once per collection version and served as cached bytes
+ * (plain and gzip), with a strong ETag so unchanged clients get 304 Not Modified.
+ * Deflate-only clients get the plain bytes, which CompressionFilter compresses and
+ * tags with the deflate variant of the ETag.
+ */
+public class VersionedJsonCache {
+
+    public static final class Entry {
+        private final long version;
+        private final byte[] body;
+        private final byte[] gzipBody;
+        private final String etag;
+
+        private Entry(long version, byte[] body, byte[] gzipBody, String etag) {
+            this.version = version;
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.etag = etag;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public byte[] getGzipBody() {
+            return gzipBody;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * The ETag for the content sent with {@code encoding} ("gzip", "deflate" or null)
+         */
+        public String getEtag(String encoding) {
+            return AcceptEncoding.etagFor(etag, encoding);
+        }
+    }
+
+    private final LongSupplier version;
+    private final Supplier<String> renderer;
+    private volatile Entry entry;
+
+    public VersionedJsonCache(LongSupplier version, Supplier<String> renderer) {
+        this.version = version;
+        this.renderer = renderer;
+    }
+
+    public Entry get() throws IOException {
+        long current = version.getAsLong();
+        Entry cached = entry;
+        if (cached != null && cached.version == current) {
+            return cached;
+        }
+        String json = renderer.get();
+        Entry rendered = render(current, json);
+        // Only publish if nothing changed while rendering, otherwise the entry
+        // could be labelled with a version older than its content
+        if (version.getAsLong() == current) {
+            entry = rendered;
+        }
+        return rendered;
+    }
+
+    private static Entry render(long version, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        return new Entry(version, body, compressed.toByteArray(), "\"" + digest(body) + "\"");
+    }
+
+    private static String digest(byte[] body) {
+        try {
+            // Content-based, so ETags stay valid across restarts (versions restart at 0)
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the cached response, answering 304 if the client's If-None-Match matches.
+     * Callers set CORS and Content-Type headers beforehand.
+     */
+    public void send(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Entry current = get();
+        boolean gzip = acceptsGzip(req);
+        String etag = gzip ? current.getEtag("gzip") : current.getEtag();
+
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Vary", "Accept-Encoding");
+        // Cacheable, but always revalidated so admin edits show up immediately
+        resp.setHeader("Cache-Control", "no-cache");
+
+        if (EntityTags.matches(req.getHeader("If-None-Match"), current.getEtag(), current.getEtag("gzip"),
+                current.getEtag("deflate"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = gzip ? current.getGzipBody() : current.getBody();
+        if (gzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        resp.setContentLength(body.length);
+        OutputStream out = resp.getOutputStream();
+        out.write(body);
+        out.flush();
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest req) {
+        return AcceptEncoding.quality(req.getHeader("Accept-Encoding"), "gzip") > 0;
+    }
+}
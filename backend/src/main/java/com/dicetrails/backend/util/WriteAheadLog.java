@@ -0,0 +1,182 @@
+package com.dicetrails.backend.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Append-only mutation log for a single collection.
+ * Each line is one compact JSON record: {"op":"put","key":"...","value":{...}}
+ * or {"op":"del","key":"..."}.
+ */
+public class WriteAheadLog {
+    public static final String OP_PUT = "put";
+    public static final String OP_DELETE = "del";
+
+    /**
+     * Receives replayed records in log order. value is null for deletes.
+     */
+    public interface RecordHandler {
+        void apply(String op, String key, JsonElement value);
+    }
+
+    private final File file;
+    private final boolean fsync;
+    private final Gson gson = new Gson();
+    private FileOutputStream stream;
+    private Writer writer;
+    private int recordCount;
+    private boolean damaged; // The last replay stopped at a corrupt record
+
+    public WriteAheadLog(String filename, boolean fsync) {
+        this.file = new File(filename);
+        this.fsync = fsync;
+    }
+
+    public synchronized void append(String op, String key, JsonElement value) throws IOException {
+        open();
+        write(op, key, value);
+        sync();
+    }
+
+    /**
+     * Append a put for each entry, flushed and synced once for the whole batch
+     */
+    public synchronized void appendPuts(Map<String, JsonElement> values) throws IOException {
+        open();
+        for (Map.Entry<String, JsonElement> entry : values.entrySet()) {
+            write(OP_PUT, entry.getKey(), entry.getValue());
+        }
+        sync();
+    }
+
+    private void open() throws IOException {
+        if (writer == null) {
+            stream = new FileOutputStream(file, true);
+            writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void write(String op, String key, JsonElement value) throws IOException {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", op);
+        record.addProperty("key", key);
+        if (value != null) {
+            record.add("value", value);
+        }
+        writer.write(gson.toJson(record));
+        writer.write('\n');
+        recordCount++;
+    }
+
+    private void sync() throws IOException {
+        writer.flush();
+        if (fsync) {
+            stream.getChannel().force(false);
+        }
+    }
+
+    /**
+     * Replay every complete record in the log. A torn or corrupt line (e.g. from a
+     * crash mid-append) ends the replay, since nothing after it can be trusted.
+     *
+     * @return number of records applied
+     */
+    public synchronized int replay(RecordHandler handler) {
+        damaged = false;
+        if (!file.exists()) {
+            return 0;
+        }
+        int applied = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonObject record = parseRecord(line);
+                if (record == null) {
+                    System.err.println("Stopping replay of " + file + " at corrupt record " + (applied + 1));
+                    damaged = true;
+                    break;
+                }
+                String key = record.get("key").isJsonNull() ? null : record.get("key").getAsString();
+                handler.apply(record.get("op").getAsString(), key, record.get("value"));
+                applied++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        recordCount = applied;
+        return applied;
+    }
+
+    /**
+     * The record on a log line, or null if the line is torn or is well-formed JSON that
+     * is not a log record (no string op, or a key that is not a string)
+     */
+    private static JsonObject parseRecord(String line) {
+        JsonElement element;
+        try {
+            element = new JsonParser().parse(line);
+        } catch (JsonParseException e) {
+            return null;
+        }
+        if (!element.isJsonObject()) {
+            return null;
+        }
+        JsonObject record = element.getAsJsonObject();
+        JsonElement op = record.get("op");
+        if (op == null || !op.isJsonPrimitive()) {
+            return null;
+        }
+        if (!record.has("key")) {
+            record.add("key", JsonNull.INSTANCE);
+        }
+        JsonElement key = record.get("key");
+        return key.isJsonNull() || key.isJsonPrimitive() ? record : null;
+    }
+
+    /**
+     * True if the last replay stopped before the end of the log, at a torn or corrupt record
+     */
+    public synchronized boolean isDamaged() {
+        return damaged;
+    }
+
+    /**
+     * True if the log file is missing or has no content at all
+     */
+    public synchronized boolean isEmpty() {
+        return file.length() == 0;
+    }
+
+    /**
+     * Discard all records. Called once their effects are in a fresh snapshot.
+     */
+    public synchronized void truncate() throws IOException {
+        close();
+        new FileOutputStream(file, false).close();
+        recordCount = 0;
+    }
+
+    public synchronized int size() {
+        return recordCount;
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            stream = null;
+        }
+    }
+}
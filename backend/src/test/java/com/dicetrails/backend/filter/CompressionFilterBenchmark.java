@@ -0,0 +1,174 @@
+package com.dicetrails.backend.filter;
+
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import com.dicetrails.backend.util.DataManager;
+import com.google.gson.Gson;
+import junit.framework.TestCase;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bytes sent and CPU time per large JSON response through CompressionFilter: uncompressed,
+ * compressed per request (gzip and deflate), compressed once per version for a cacheable
+ * endpoint (the cache miss) and served from that cache (the hit). The servlet's output is
+ * rendered up front so only the filter is timed.
+ *
+ * Properties: {@code bench.orders} in the response (default 2000).
+ */
+public class CompressionFilterBenchmark extends TestCase {
+
+    // Not one of the cached endpoints, so it is compressed on every request
+    private static final String UNCACHED = "/api/orders";
+    private static final String CACHED = "/api/all-orders";
+
+    private final long[] sent = { 0 };
+
+    public void testRatioAndCostPerResponse() throws IOException, ServletException {
+        byte[] body = new Gson().toJson(TestData.orders(Bench.intProperty("orders", 2000), 500, 300))
+                .getBytes(StandardCharsets.UTF_8);
+        FilterChain servlet = (req, res) -> {
+            res.setContentType("application/json;charset=UTF-8");
+            res.getOutputStream().write(body);
+        };
+
+        for (String name : List.of("orders.json", "orders.bin", "orders.json.wal")) {
+            Files.deleteIfExists(Paths.get(name)); // Left by other benchmarks; the version is all that is needed
+        }
+        DataManager.getInstance(); // Supplies the version of the cached endpoint
+        try {
+            Bench.report("%d byte JSON body", body.length);
+            Bench.report("%-34s %12s %8s %12s", "", "bytes sent", "ratio", "us/response");
+            report("identity", body.length, new CompressionFilter(), UNCACHED, null, servlet);
+            report("gzip per request", body.length, new CompressionFilter(), UNCACHED, "gzip", servlet);
+            report("deflate per request", body.length, new CompressionFilter(), UNCACHED, "deflate", servlet);
+            // A new filter per response, so every one is the first for its version
+            report("gzip once per version (miss)", body.length, null, CACHED, "gzip", servlet);
+            report("gzip from cache (hit)", body.length, new CompressionFilter(), CACHED, "gzip", servlet);
+        } finally {
+            DataManager.shutdownInstance();
+        }
+    }
+
+    private void report(String label, int rawSize, CompressionFilter shared, String path, String acceptEncoding,
+                        FilterChain servlet) throws IOException, ServletException {
+        HttpServletRequest request = request(path, acceptEncoding);
+        Runnable send = () -> {
+            try {
+                (shared != null ? shared : new CompressionFilter()).doFilter(request, response(), servlet);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ServletException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        sent[0] = 0;
+        send.run();
+        long size = sent[0];
+        double nanos = Bench.nanosPerOp(200, send);
+        Bench.report("%-34s %12d %7.1f%% %12.1f", label, size, 100.0 * size / rawSize, nanos / 1e3);
+        assertTrue(size > 0);
+    }
+
+    private static HttpServletRequest request(String path, String acceptEncoding) {
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRequestURI":
+                            return path;
+                        case "getContextPath":
+                            return "";
+                        case "getMethod":
+                            return "GET";
+                        case "getHeader":
+                            return "Accept-Encoding".equalsIgnoreCase((String) args[0]) ? acceptEncoding : null;
+                        case "getScheme":
+                            return "http";
+                        case "getServerName":
+                            return "localhost";
+                        case "getServerPort":
+                            return 8080;
+                        case "getParameterNames":
+                            return Collections.emptyEnumeration();
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    // Keeps the headers the filter reads back, and counts the body bytes
+    private HttpServletResponse response() {
+        Map<String, String> headers = new HashMap<>();
+        String[] contentType = { null };
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                sent[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                sent[0] += len;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return out;
+                        case "getStatus":
+                            return HttpServletResponse.SC_OK;
+                        case "getCharacterEncoding":
+                            return "UTF-8";
+                        case "setContentType":
+                            contentType[0] = (String) args[0];
+                            return null;
+                        case "getContentType":
+                            return contentType[0];
+                        case "setHeader":
+                        case "addHeader":
+                            headers.put(((String) args[0]).toLowerCase(Locale.ROOT), (String) args[1]);
+                            return null;
+                        case "getHeader":
+                            return headers.get(((String) args[0]).toLowerCase(Locale.ROOT));
+                        case "containsHeader":
+                            return headers.containsKey(((String) args[0]).toLowerCase(Locale.ROOT));
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        return type == int.class ? (Object) 0 : type == long.class ? (Object) 0L : null;
+    }
+}
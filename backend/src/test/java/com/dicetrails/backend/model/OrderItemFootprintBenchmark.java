@@ -0,0 +1,68 @@
+package com.dicetrails.backend.model;
+
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import junit.framework.TestCase;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heap held by the lines of every order: typed OrderItems against the Gson maps with
+ * boxed numbers that {@code Order.items} used to be, parsed from the same JSON. Measured
+ * as the used heap after a full collection, with the lines reachable and then dropped.
+ *
+ * Properties: {@code bench.orders} (default 200000).
+ */
+public class OrderItemFootprintBenchmark extends TestCase {
+
+    private static final Type TYPED = new TypeToken<List<List<OrderItem>>>() { }.getType();
+    private static final Type MAPS = new TypeToken<List<List<Map<String, Object>>>>() { }.getType();
+
+    public void testHeapHeldByOrderLines() {
+        List<List<OrderItem>> lines = new ArrayList<>();
+        int lineCount = 0;
+        for (Order order : TestData.orders(Bench.intProperty("orders", 200000), 5000, 300)) {
+            lines.add(order.getItems());
+            lineCount += order.getItems().size();
+        }
+        Gson gson = new Gson();
+        String json = gson.toJson(lines);
+        lines = null;
+
+        long typed = retained(() -> gson.fromJson(json, TYPED));
+        long maps = retained(() -> gson.fromJson(json, MAPS));
+
+        Bench.report("%d order lines", lineCount);
+        Bench.report("%-28s %12s %12s", "", "MB", "bytes/line");
+        Bench.report("%-28s %12.1f %12d", "List<Map<String, Object>>", maps / 1e6, maps / lineCount);
+        Bench.report("%-28s %12.1f %12d", "List<OrderItem>", typed / 1e6, typed / lineCount);
+        assertTrue(typed > 0 && maps > 0);
+    }
+
+    private interface Parse {
+        Object run();
+    }
+
+    private static long retained(Parse parse) {
+        long before = usedAfterGc();
+        Object held = parse.run();
+        long after = usedAfterGc();
+        if (System.identityHashCode(held) == 42) {
+            System.out.println(); // Keeps the parsed lines reachable until measured
+        }
+        return after - before;
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
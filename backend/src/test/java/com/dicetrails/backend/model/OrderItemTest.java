@@ -0,0 +1,66 @@
+package com.dicetrails.backend.model;
+
+import com.google.gson.Gson;
+import junit.framework.TestCase;
+
+public class OrderItemTest extends TestCase {
+
+    private final Gson gson = new Gson();
+
+    private OrderItem read(String json) {
+        return gson.fromJson(json, OrderItem.class);
+    }
+
+    public void testKnownFieldsRoundTrip() {
+        String json = "{\"_id\":42,\"name\":\"Game 42\",\"price\":19.5,\"quantity\":3,\"discount\":10.0,"
+                + "\"image\":[\"/a.jpg\",\"/b.jpg\"],\"isReviewed\":true}";
+        OrderItem item = read(json);
+        assertEquals(42, item.getProductId());
+        assertEquals(3, item.getQuantity());
+        assertEquals(19.5, item.getPrice());
+        assertEquals(10.0, item.getDiscount());
+        assertTrue(item.isReviewed());
+        assertEquals("Game 42", item.getName());
+        assertEquals(json, gson.toJson(item));
+    }
+
+    public void testUnknownFieldsAreKeptInOrder() {
+        String json = "{\"_id\":7,\"price\":5.0,\"quantity\":1,\"description\":\"Dice and trails\","
+                + "\"category\":\"Family\",\"sizes\":[\"S\",\"M\"],\"bestseller\":false,\"stock\":{\"west\":3}}";
+        OrderItem item = read(json);
+        assertEquals(7, item.getProductId());
+        assertEquals(json, gson.toJson(item));
+    }
+
+    public void testProductIdFromOlderKeysAndFormats() {
+        assertEquals(42, read("{\"id\":\"42\"}").getProductId());
+        assertEquals(42, read("{\"productId\":42.0}").getProductId());
+        assertEquals(42, read("{\"_id\":\"4.2E1\"}").getProductId());
+        assertEquals(0, read("{\"_id\":\"not-a-number\"}").getProductId());
+        // The first usable key wins
+        assertEquals(5, read("{\"_id\":5,\"id\":6}").getProductId());
+        assertEquals(6, read("{\"_id\":\"x\",\"id\":6}").getProductId());
+        // Written back as _id only
+        assertEquals("{\"_id\":42,\"price\":0.0,\"quantity\":0}", gson.toJson(read("{\"id\":\"42\"}")));
+    }
+
+    public void testLooseValuesAsOlderOrdersHaveThem() {
+        OrderItem item = read("{\"_id\":1,\"quantity\":2.0,\"price\":\"12.5\",\"isReviewed\":\"true\"}");
+        assertEquals(2, item.getQuantity());
+        assertEquals(12.5, item.getPrice());
+        assertTrue(item.isReviewed());
+    }
+
+    public void testNullsAreDropped() {
+        OrderItem item = read("{\"_id\":1,\"name\":null,\"image\":null,\"size\":null,\"quantity\":1}");
+        assertNull(item.getName());
+        assertEquals("{\"_id\":1,\"price\":0.0,\"quantity\":1}", gson.toJson(item));
+    }
+
+    public void testItemsOfAnOrder() {
+        Order order = gson.fromJson("{\"orderId\":\"1\",\"items\":[{\"_id\":1,\"quantity\":2,\"color\":\"red\"},null]}",
+                Order.class);
+        assertEquals(2, order.getItems().size());
+        assertEquals("red", gson.toJsonTree(order.getItems().get(0)).getAsJsonObject().get("color").getAsString());
+    }
+}
@@ -0,0 +1,34 @@
+package com.dicetrails.backend.testing;
+
+/**
+ * Minimal timing support for the *Benchmark classes. They are not part of the default
+ * test run; run one with e.g. {@code mvn test -Dtest=WriteAheadLogBenchmark}, and scale it
+ * with the properties each one reads, e.g. {@code -Dbench.orders=1000000}.
+ */
+public final class Bench {
+
+    private Bench() {
+    }
+
+    public static int intProperty(String name, int defaultValue) {
+        return Integer.getInteger("bench." + name, defaultValue);
+    }
+
+    /**
+     * Average nanoseconds per run of {@code op}, after as many untimed warm-up runs
+     */
+    public static double nanosPerOp(int runs, Runnable op) {
+        for (int i = 0; i < runs; i++) {
+            op.run();
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            op.run();
+        }
+        return (double) (System.nanoTime() - started) / runs;
+    }
+
+    public static void report(String format, Object... args) {
+        System.out.println(String.format(format, args));
+    }
+}
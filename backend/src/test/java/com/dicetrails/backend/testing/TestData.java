@@ -0,0 +1,124 @@
+package com.dicetrails.backend.testing;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.OrderItem;
+import com.dicetrails.backend.model.Product;
+import com.dicetrails.backend.model.Review;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic model objects shaped like the production data, for tests and benchmarks
+ */
+public final class TestData {
+
+    public static final long START = 1700000000000L; // 2023-11-14, UTC
+    public static final String[] STATUSES = { "Order Placed", "Packing", "Shipped", "Delivered", "Cancelled" };
+    public static final String[] REGIONS = { "west", "east", "international" };
+
+    private TestData() {
+    }
+
+    /**
+     * Order {@code i}, one minute after order {@code i - 1}, for one of {@code users}
+     * users and with one to three lines of the first {@code products} products
+     */
+    public static Order order(int i, int users, int products) {
+        Random random = new Random(i);
+        List<OrderItem> items = new ArrayList<>();
+        int lines = 1 + random.nextInt(3);
+        double total = 0;
+        for (int line = 0; line < lines; line++) {
+            OrderItem item = new OrderItem(1 + random.nextInt(products), 1 + random.nextInt(3),
+                    5 + random.nextInt(60));
+            item.setName("Game " + item.getProductId());
+            items.add(item);
+            total += item.getPrice() * item.getQuantity();
+        }
+        Map<String, String> address = new LinkedHashMap<>();
+        address.put("firstName", "First" + i % 100);
+        address.put("lastName", "Last" + i % 100);
+        address.put("street", i + " Main Street");
+        address.put("city", "City" + i % 20);
+        address.put("zipcode", String.valueOf(10000 + i % 9000));
+
+        Order order = new Order("user" + random.nextInt(users) + "@example.com", address, "card", total, items);
+        order.setOrderId(String.valueOf(30000001 + i));
+        order.setDate(START + i * 60000L);
+        order.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+        order.setRegion(REGIONS[random.nextInt(REGIONS.length)]);
+        order.setShippingFee(order.getRegion().equals("international") ? 15 : 5);
+        return order;
+    }
+
+    public static List<Order> orders(int count, int users, int products) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(order(i, users, products));
+        }
+        return orders;
+    }
+
+    public static Product product(int id) {
+        Product product = new Product();
+        product.set_id(id);
+        product.setName("Game " + id);
+        product.setDescription("A board game about trails, dice and route " + id);
+        product.setPrice(5 + id % 60);
+        product.setImage(new String[] { "/images/" + id + ".jpg" });
+        product.setCategory(id % 2 == 0 ? "Strategy" : "Family");
+        product.setSubCategory(id % 3 == 0 ? "Cards" : "Board");
+        product.setDate("2024-01-01");
+        product.setQuantity(1000);
+        return product;
+    }
+
+    public static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            products.add(product(id));
+        }
+        return products;
+    }
+
+    public static List<Review> reviews(int count, int products) {
+        List<Review> reviews = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            reviews.add(review(i, products));
+        }
+        return reviews;
+    }
+
+    /**
+     * Write a collection file as DataManager reads it, for benchmarks that load a DataManager
+     * from the working directory
+     */
+    public static void writeJson(Path file, List<?> records) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            new Gson().toJson(records, writer);
+        }
+    }
+
+    public static Review review(int i, int products) {
+        Random random = new Random(i);
+        Review review = new Review();
+        review.setId("r" + i);
+        review.setProductId(String.valueOf(1 + random.nextInt(products)));
+        review.setUser("user" + random.nextInt(1000) + "@example.com");
+        review.setRating(1 + random.nextInt(5));
+        review.setDate("2024-01-" + (10 + i % 20));
+        review.setContent("Review " + i);
+        review.setHelpful(random.nextInt(20));
+        return review;
+    }
+}
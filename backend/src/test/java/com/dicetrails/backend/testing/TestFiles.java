@@ -0,0 +1,31 @@
+package com.dicetrails.backend.testing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Temporary directories for tests that write snapshots and logs
+ */
+public final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    public static Path createTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory("dicetrails-" + prefix);
+    }
+
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
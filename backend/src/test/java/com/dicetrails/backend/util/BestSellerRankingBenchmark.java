@@ -0,0 +1,78 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.OrderItem;
+import com.dicetrails.backend.model.Product;
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * /api/bestsellers: summing every line of every order and sorting the catalogue per
+ * request, as the servlet used to, against reading the top of the maintained ranking.
+ * Also times the per-order update that keeps the ranking current.
+ *
+ * Properties: {@code bench.orders} (default 200000; the request's size is 1000000, with
+ * e.g. {@code -DargLine=-Xmx4g}), {@code bench.products} (default 300).
+ */
+public class BestSellerRankingBenchmark extends TestCase {
+
+    public void testTopFiveAgainstFullWalk() {
+        int productCount = Bench.intProperty("products", 300);
+        List<Order> orders = TestData.orders(Bench.intProperty("orders", 200000), 5000, productCount);
+        List<Product> products = TestData.products(productCount);
+        BestSellerRanking ranking = new BestSellerRanking();
+        for (Order order : orders) {
+            record(ranking, order, 1);
+        }
+        Map<Integer, Product> byId = products.stream().collect(Collectors.toMap(Product::get_id, p -> p));
+        long[] sink = { 0 };
+
+        double walk = Bench.nanosPerOp(5, () -> sink[0] += walkAndSort(orders, products).size());
+        double ranked = Bench.nanosPerOp(100000, () -> sink[0] += ranking.topProductIds(5, byId::containsKey).size());
+        Order placed = orders.get(0);
+        double update = Bench.nanosPerOp(100000, () -> {
+            record(ranking, placed, 1);
+            record(ranking, placed, -1);
+        });
+
+        assertEquals(walkAndSort(orders, products).stream().map(Product::get_id).collect(Collectors.toList()),
+                ranking.topProductIds(5, byId::containsKey));
+        Bench.report("%d orders, %d products", orders.size(), products.size());
+        Bench.report("%-32s %14.1f us", "top 5, walk orders and sort", walk / 1e3);
+        Bench.report("%-32s %14.3f us", "top 5, ranking", ranked / 1e3);
+        Bench.report("%-32s %14.3f us", "ranking update, place + cancel", update / 1e3);
+        assertTrue(sink[0] > 0);
+    }
+
+    private static void record(BestSellerRanking ranking, Order order, int sign) {
+        if (!"Cancelled".equals(order.getStatus())) {
+            for (OrderItem item : order.getItems()) {
+                ranking.record(item.getProductId(), sign * item.getQuantity());
+            }
+        }
+    }
+
+    // What BestSellerServlet did per request
+    private static List<Product> walkAndSort(List<Order> orders, List<Product> products) {
+        Map<Integer, Integer> sales = new HashMap<>();
+        for (Order order : orders) {
+            if (!"Cancelled".equals(order.getStatus())) {
+                for (OrderItem item : order.getItems()) {
+                    sales.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+                }
+            }
+        }
+        return products.stream()
+                .sorted((a, b) -> sales.getOrDefault(b.get_id(), 0) != sales.getOrDefault(a.get_id(), 0)
+                        ? Integer.compare(sales.getOrDefault(b.get_id(), 0), sales.getOrDefault(a.get_id(), 0))
+                        : Integer.compare(a.get_id(), b.get_id()))
+                .limit(5)
+                .collect(Collectors.toList());
+    }
+}
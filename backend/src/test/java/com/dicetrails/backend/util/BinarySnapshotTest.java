@@ -0,0 +1,160 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.Product;
+import com.dicetrails.backend.testing.TestData;
+import com.dicetrails.backend.testing.TestFiles;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class BinarySnapshotTest extends TestCase {
+
+    private final Gson gson = new Gson();
+    private Path dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TestFiles.createTempDir("binary-snapshot-test");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    private Path write(List<?> records, BinarySnapshot.Source source) throws IOException {
+        Path file = dir.resolve("records.bin");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            BinarySnapshot.write(records, source, out);
+        }
+        return file;
+    }
+
+    public void testOrdersRoundTripToTheSameJson() throws IOException {
+        String json = gson.toJson(TestData.orders(200, 20, 30));
+        List<Order> orders = gson.fromJson(json, new TypeToken<List<Order>>() { }.getType());
+        Path file = write(orders, BinarySnapshot.Source.NONE);
+        assertEquals(json, gson.toJson(BinarySnapshot.read(file, Order.class)));
+    }
+
+    public void testUnknownFieldsNullsAndNonAsciiSurvive() throws IOException {
+        String json = "[{\"orderId\":\"30000001\",\"userId\":\"zoë@example.com\",\"address\":{\"city\":\"Zürich\"},"
+                + "\"items\":[{\"productId\":7,\"quantity\":2,\"price\":12.5,\"discount\":0.0,\"reviewed\":false,"
+                + "\"name\":\"Würfel ⚀\",\"image\":[\"/a.jpg\",\"/b.jpg\"],\"category\":\"Family\","
+                + "\"bestseller\":true,\"dimensions\":{\"w\":30,\"h\":null}}],\"date\":1700000000000}]";
+        List<Order> orders = gson.fromJson(json, new TypeToken<List<Order>>() { }.getType());
+        Path file = write(orders, BinarySnapshot.Source.NONE);
+        assertEquals(gson.toJson(orders), gson.toJson(BinarySnapshot.read(file, Order.class)));
+        assertTrue(gson.toJson(BinarySnapshot.read(file, Order.class)).contains("\"dimensions\":{\"w\":30"));
+    }
+
+    public void testProductsRoundTrip() throws IOException {
+        List<Product> products = TestData.products(50);
+        Path file = write(products, BinarySnapshot.Source.NONE);
+        assertEquals(gson.toJson(products), gson.toJson(BinarySnapshot.read(file, Product.class)));
+    }
+
+    public void testEmptyCollection() throws IOException {
+        Path file = write(List.of(), BinarySnapshot.Source.NONE);
+        assertEquals(List.of(), BinarySnapshot.read(file, Order.class));
+    }
+
+    public void testEveryFlippedByteIsRejected() throws IOException {
+        Path file = write(TestData.orders(3, 2, 5), BinarySnapshot.Source.NONE);
+        byte[] original = Files.readAllBytes(file);
+        for (int i = 5; i < original.length; i++) {
+            byte[] damaged = original.clone();
+            damaged[i] ^= 0x10;
+            Files.write(file, damaged);
+            try {
+                BinarySnapshot.read(file, Order.class);
+                fail("accepted a flipped byte at " + i);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("checksum mismatch"));
+            }
+        }
+    }
+
+    public void testTruncatedAndForeignFilesAreRejected() throws IOException {
+        Path file = write(TestData.orders(3, 2, 5), BinarySnapshot.Source.NONE);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+        assertReadFails(file, "checksum mismatch");
+
+        Files.write(file, "[{\"orderId\":\"1\"}]".getBytes(StandardCharsets.UTF_8));
+        assertReadFails(file, "is not a binary snapshot");
+
+        bytes[4] = 9;
+        Files.write(file, bytes);
+        assertReadFails(file, "unsupported snapshot version 9");
+    }
+
+    private static void assertReadFails(Path file, String message) {
+        try {
+            BinarySnapshot.read(file, Order.class);
+            fail("read " + file);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    public void testSourceIsKeptInTheHeader() throws IOException {
+        Path json = dir.resolve("records.json");
+        TestData.writeJson(json, TestData.products(5));
+        Path file = write(TestData.products(5), BinarySnapshot.Source.of(json, true));
+
+        BinarySnapshot.Source source = BinarySnapshot.readSource(file);
+        assertTrue(source.hasSameRecords());
+        assertTrue(source.matches(json));
+        assertFalse(source.withSameRecords(false).hasSameRecords());
+
+        // Same size, different content
+        String text = new String(Files.readAllBytes(json), StandardCharsets.UTF_8);
+        Files.write(json, text.replace("Game 1\"", "Game 9\"").getBytes(StandardCharsets.UTF_8));
+        assertFalse(source.matches(json));
+        Files.delete(json);
+        assertFalse(source.matches(json));
+    }
+
+    public void testNoneMatchesOnlyAMissingFile() throws IOException {
+        Path json = dir.resolve("records.json");
+        assertTrue(BinarySnapshot.Source.NONE.matches(json));
+        Files.write(json, "[]".getBytes(StandardCharsets.UTF_8));
+        assertFalse(BinarySnapshot.Source.NONE.matches(json));
+        assertFalse(BinarySnapshot.readSource(write(List.of(), BinarySnapshot.Source.NONE)).matches(json));
+    }
+
+    public void testVersionOneSnapshotsAreStillRead() throws IOException {
+        List<Order> orders = TestData.orders(20, 5, 10);
+        byte[] current = Files.readAllBytes(write(orders, BinarySnapshot.Source.NONE));
+
+        // Version 1: the same file without the 17-byte source after the version
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        legacy.write(current, 0, 5);
+        legacy.write(current, 22, current.length - 22 - 4);
+        byte[] bytes = legacy.toByteArray();
+        bytes[4] = 1;
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        int value = (int) crc.getValue();
+        legacy.reset();
+        legacy.write(bytes);
+        legacy.write(new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value });
+        Path file = dir.resolve("legacy.bin");
+        Files.write(file, legacy.toByteArray());
+
+        assertNull(BinarySnapshot.readSource(file));
+        assertEquals(gson.toJson(orders), gson.toJson(BinarySnapshot.read(file, Order.class)));
+    }
+}
@@ -0,0 +1,173 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.Review;
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of a mixed workload (order lookups by user, review posts, order status
+ * updates) under one monitor for the whole store, as DataManager used to lock, against
+ * one CollectionLock per collection.
+ *
+ * Properties: {@code bench.threads} (default 4), {@code bench.seconds} per run (default 2),
+ * {@code bench.orders} (default 100000).
+ */
+public class CollectionLockBenchmark extends TestCase {
+
+    private interface Store {
+        double ordersOf(String userId);
+
+        void addReview(Review review);
+
+        void updateStatus(String userId, String status);
+    }
+
+    private static final class Data {
+        final Map<String, List<Order>> ordersByUser = new HashMap<>();
+        final List<Review> reviews = new ArrayList<>();
+
+        Data(List<Order> orders) {
+            for (Order order : orders) {
+                ordersByUser.computeIfAbsent(order.getUserId(), key -> new ArrayList<>()).add(order);
+            }
+        }
+
+        double ordersOf(String userId) {
+            double total = 0;
+            for (Order order : ordersByUser.getOrDefault(userId, List.of())) {
+                total += order.getTotalAmount();
+            }
+            return total;
+        }
+
+        void addReview(Review review) {
+            if (reviews.size() == 10000) {
+                reviews.clear();
+            }
+            reviews.add(review);
+        }
+
+        void updateStatus(String userId, String status) {
+            for (Order order : ordersByUser.getOrDefault(userId, List.of())) {
+                order.setStatus(status);
+            }
+        }
+    }
+
+    // The old DataManager: every access serialised on the singleton
+    private static final class GlobalMonitor implements Store {
+        private final Data data;
+
+        GlobalMonitor(Data data) {
+            this.data = data;
+        }
+
+        @Override
+        public synchronized double ordersOf(String userId) {
+            return data.ordersOf(userId);
+        }
+
+        @Override
+        public synchronized void addReview(Review review) {
+            data.addReview(review);
+        }
+
+        @Override
+        public synchronized void updateStatus(String userId, String status) {
+            data.updateStatus(userId, status);
+        }
+    }
+
+    private static final class PerCollection implements Store {
+        private final Data data;
+        private final CollectionLock ordersLock = new CollectionLock();
+        private final CollectionLock reviewsLock = new CollectionLock();
+
+        PerCollection(Data data) {
+            this.data = data;
+        }
+
+        @Override
+        public double ordersOf(String userId) {
+            try (CollectionLock.Guard guard = ordersLock.read()) {
+                return data.ordersOf(userId);
+            }
+        }
+
+        @Override
+        public void addReview(Review review) {
+            try (CollectionLock.Guard guard = reviewsLock.write()) {
+                data.addReview(review);
+            }
+        }
+
+        @Override
+        public void updateStatus(String userId, String status) {
+            try (CollectionLock.Guard guard = ordersLock.write()) {
+                data.updateStatus(userId, status);
+            }
+        }
+    }
+
+    public void testMixedWorkloadThroughput() throws InterruptedException {
+        int threads = Bench.intProperty("threads", 4);
+        int seconds = Bench.intProperty("seconds", 2);
+        int users = 5000;
+        List<Order> orders = TestData.orders(Bench.intProperty("orders", 100000), users, 300);
+        Review review = TestData.review(1, 300);
+
+        Bench.report("%d threads, 90%% order reads / 8%% review posts / 2%% status updates", threads);
+        for (int round = 0; round < 2; round++) { // The first round warms up
+            double global = run(new GlobalMonitor(new Data(orders)), threads, seconds, users, review);
+            double split = run(new PerCollection(new Data(orders)), threads, seconds, users, review);
+            if (round == 1) {
+                Bench.report("%-24s %12.0f ops/s", "global monitor", global);
+                Bench.report("%-24s %12.0f ops/s", "per-collection locks", split);
+            }
+        }
+    }
+
+    private static double run(Store store, int threads, int seconds, int users, Review review)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                double sink = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 100; i++) {
+                        String userId = "user" + random.nextInt(users) + "@example.com";
+                        int dice = random.nextInt(100);
+                        if (dice < 90) {
+                            sink += store.ordersOf(userId);
+                        } else if (dice < 98) {
+                            store.addReview(review);
+                        } else {
+                            store.updateStatus(userId, TestData.STATUSES[dice % 5]);
+                        }
+                    }
+                    operations.add(100);
+                }
+                if (sink < 0) {
+                    System.out.println(sink); // Keeps the reads from being optimised away
+                }
+                done.countDown();
+            });
+            thread.start();
+        }
+        done.await();
+        return operations.doubleValue() / seconds;
+    }
+}
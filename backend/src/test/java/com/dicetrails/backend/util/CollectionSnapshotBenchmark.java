@@ -0,0 +1,106 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Product;
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import com.google.gson.Gson;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bytes allocated per /api/products request: copying the product list per call (and
+ * rendering it), as getAllProducts used to, against the shared snapshot (and the
+ * catalogue's cached JSON). Allocation is measured per thread, so the numbers do not
+ * depend on the collector.
+ *
+ * Properties: {@code bench.products} (default 2000).
+ */
+public class CollectionSnapshotBenchmark extends TestCase {
+
+    private static final int REQUESTS = 1000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public void testAllocationPerRequest() throws IOException {
+        List<Product> products = TestData.products(Bench.intProperty("products", 2000));
+        CollectionLock lock = new CollectionLock();
+        CollectionSnapshot<Product> view = new CollectionSnapshot<>(lock, () -> products);
+        Gson gson = new Gson();
+        VersionedJsonCache catalogue = new VersionedJsonCache(view::version, () -> gson.toJson(view.get()));
+        long[] sink = { 0 };
+
+        long copy = bytesPerRequest(() -> {
+            try (CollectionLock.Guard guard = lock.read()) {
+                sink[0] += new ArrayList<>(products).size();
+            }
+        });
+        long shared = bytesPerRequest(() -> sink[0] += view.get().size());
+        long rendered = bytesPerRequest(() -> {
+            List<Product> copied;
+            try (CollectionLock.Guard guard = lock.read()) {
+                copied = new ArrayList<>(products);
+            }
+            sink[0] += gson.toJson(copied).length();
+        });
+        long cached = bytesPerRequest(() -> {
+            try {
+                sink[0] += catalogue.get().getBody().length;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        Bench.report("%d products, bytes allocated per request", products.size());
+        Bench.report("%-36s %12d", "getAllProducts, copy per call", copy);
+        Bench.report("%-36s %12d", "getAllProducts, shared snapshot", shared);
+        Bench.report("%-36s %12d", "/api/products, copy and render", rendered);
+        Bench.report("%-36s %12d", "/api/products, cached JSON", cached);
+        assertTrue(sink[0] > 0);
+    }
+
+    /**
+     * A burst of orders with a read after each one: retiring the snapshot on every add
+     * copies the whole collection per read, extending it copies nothing
+     */
+    public void testReadAfterEachAppend() {
+        List<Product> products = TestData.products(Bench.intProperty("products", 2000));
+        CollectionLock lock = new CollectionLock();
+        long[] sink = { 0 };
+
+        Bench.report("%d products, bytes allocated per add and read", products.size());
+        for (boolean append : new boolean[] { false, true }) {
+            List<Product> data = new ArrayList<>(products);
+            CollectionSnapshot<Product> view = new CollectionSnapshot<>(lock, () -> data);
+            long bytes = bytesPerRequest(() -> {
+                Product product = products.get(data.size() % products.size());
+                data.add(product);
+                if (append) {
+                    view.append(product);
+                } else {
+                    view.invalidate();
+                }
+                sink[0] += view.get().size();
+            });
+            Bench.report("%-36s %12d", append ? "append" : "invalidate", bytes);
+        }
+        assertTrue(sink[0] > 0);
+    }
+
+    private long bytesPerRequest(Runnable request) {
+        for (int i = 0; i < REQUESTS; i++) {
+            request.run(); // Warm up, and fill the caches
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < REQUESTS; i++) {
+            request.run();
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / REQUESTS;
+    }
+}
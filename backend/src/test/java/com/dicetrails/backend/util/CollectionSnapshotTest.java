@@ -0,0 +1,67 @@
+package com.dicetrails.backend.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CollectionSnapshotTest extends TestCase {
+
+    private final CollectionLock lock = new CollectionLock();
+    private final List<String> records = new ArrayList<>();
+    private final CollectionSnapshot<String> view = new CollectionSnapshot<>(lock, () -> records);
+
+    private void add(String record) {
+        records.add(record);
+        view.append(record);
+    }
+
+    public void testAppendsExtendThePublishedViewWithoutCopying() {
+        add("a");
+        List<String> first = view.get();
+        assertEquals(List.of("a"), first);
+        assertSame(first, view.get());
+
+        List<String> previous = first;
+        for (int i = 0; i < 100; i++) {
+            add("r" + i);
+            List<String> current = view.get();
+            assertEquals(records, current);
+            assertEquals(records.size() - 1, previous.size()); // Earlier lists keep their size
+            previous = current;
+        }
+        assertEquals(List.of("a"), first);
+    }
+
+    public void testAppendBeforeTheFirstReadIsNotLost() {
+        add("a");
+        add("b");
+        assertEquals(List.of("a", "b"), view.get());
+    }
+
+    public void testInvalidateRebuildsAndTouchKeeps() {
+        add("a");
+        add("b");
+        List<String> list = view.get();
+
+        long version = view.version();
+        view.touch();
+        assertSame(list, view.get());
+        assertTrue(view.version() > version);
+
+        records.set(0, "c");
+        view.invalidate();
+        assertEquals(List.of("c", "b"), view.get());
+        assertEquals(List.of("a", "b"), list);
+        assertTrue(view.version() > version + 1);
+    }
+
+    public void testListIsUnmodifiable() {
+        add("a");
+        try {
+            view.get().add("b");
+            fail("modified the snapshot");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+}
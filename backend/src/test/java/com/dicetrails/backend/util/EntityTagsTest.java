@@ -0,0 +1,28 @@
+package com.dicetrails.backend.util;
+
+import junit.framework.TestCase;
+
+public class EntityTagsTest extends TestCase {
+
+    private static final String ETAG = "\"0123abcd\"";
+
+    public void testMatchesAWholeTagInTheList() {
+        assertTrue(EntityTags.matches(ETAG, ETAG));
+        assertTrue(EntityTags.matches("\"other\", " + ETAG, ETAG));
+        assertTrue(EntityTags.matches("W/" + ETAG, ETAG));
+        assertTrue(EntityTags.matches(" * ", ETAG));
+    }
+
+    public void testDoesNotMatchPartOfATag() {
+        assertFalse(EntityTags.matches("\"x0123abcd\"", ETAG));
+        assertFalse(EntityTags.matches("\"0123abcd\"x", ETAG));
+        assertFalse(EntityTags.matches("\"0123abcd-gzip\"", ETAG));
+        assertFalse(EntityTags.matches("0123abcd", ETAG));
+        assertFalse(EntityTags.matches("", ETAG));
+        assertFalse(EntityTags.matches(null, ETAG));
+    }
+
+    public void testMatchesAnyOfSeveralTags() {
+        assertTrue(EntityTags.matches("\"0123abcd-gzip\"", ETAG, "\"0123abcd-gzip\""));
+    }
+}
@@ -0,0 +1,111 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.ReviewMedia;
+import com.dicetrails.backend.testing.TestFiles;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+public class MediaBlobStoreTest extends TestCase {
+
+    private Path dir;
+    private MediaBlobStore store;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TestFiles.createTempDir("media-test");
+        store = new MediaBlobStore(dir, false);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    private static ReviewMedia inline(String dataUrl) {
+        ReviewMedia media = new ReviewMedia();
+        media.setData(dataUrl);
+        return media;
+    }
+
+    private static String dataUrl(String type, byte[] content) {
+        return "data:" + type + ";base64," + Base64.getEncoder().encodeToString(content);
+    }
+
+    private static void assertRejected(String dataUrl, String message) {
+        try {
+            MediaBlobStore.validate(inline(dataUrl));
+            fail("accepted " + dataUrl);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    public void testExternalizeStoresTheDecodedContent() throws IOException {
+        byte[] content = "not really a png".getBytes(StandardCharsets.UTF_8);
+        ReviewMedia media = inline(dataUrl("image/PNG", content));
+        assertTrue(store.externalize(media));
+        assertNull(media.getData());
+        assertEquals("image/png", media.getContentType());
+        assertEquals("image", media.getType());
+        assertEquals(content.length, media.getSize());
+        assertTrue(media.getBlob().endsWith(".png"));
+        assertEquals("not really a png", new String(Files.readAllBytes(store.resolve(media.getBlob())),
+                StandardCharsets.UTF_8));
+        assertFalse(store.externalize(media));
+    }
+
+    public void testMimeLineBreaksAndMissingPaddingAreAccepted() throws IOException {
+        ReviewMedia media = inline("data:video/mp4;base64,AAEC\r\nAwQ");
+        assertTrue(store.externalize(media));
+        assertEquals(5, media.getSize());
+        assertEquals("video", media.getType());
+    }
+
+    public void testBadUploadsAreRejectedWithAReason() {
+        assertRejected("data:image/png,plain", "Media must be a base64 data URL");
+        assertRejected("data:text/html;base64,PGI+", "Unsupported media type: text/html");
+        assertRejected("data:image/png;base64,AAE*AQ==", "Invalid base64 media");
+        assertRejected("data:image/png;base64,AA=A", "Invalid base64 media");
+        assertRejected("data:image/png;base64,AAAAA", "Invalid base64 media");
+        MediaBlobStore.validate(inline("https://example.com/a.png")); // Not inline, so not checked
+    }
+
+    public void testOversizedUploadsAreRejectedBeforeDecoding() {
+        StringBuilder data = new StringBuilder("data:image/png;base64,");
+        for (int i = 0; i < (MediaBlobStore.MAX_SIZE / 3 + 1) * 4; i++) {
+            data.append('A');
+        }
+        assertRejected(data.toString(), "Media files must not be larger than 20 MB");
+    }
+
+    public void testTheLastReleaseDeletesTheBlob() throws IOException {
+        byte[] content = { 1, 2, 3 };
+        String blobId = store.put(content, "image/gif");
+        assertEquals(blobId, store.put(content, "image/gif"));
+        store.release(blobId);
+        assertNotNull(store.resolve(blobId));
+        store.release(blobId);
+        assertNull(store.resolve(blobId));
+        store.release(blobId); // Unknown by now: nothing happens
+        assertEquals(blobId, store.put(content, "image/gif"));
+        assertNotNull(store.resolve(blobId));
+    }
+
+    public void testSweepDeletesOnlyUnreferencedBlobs() throws IOException {
+        String kept = store.put(new byte[] { 1 }, "image/gif");
+        String orphan = store.put(new byte[] { 2 }, "image/gif");
+
+        // As after a restart: only references loaded from reviews are counted
+        MediaBlobStore restarted = new MediaBlobStore(dir, false);
+        restarted.retain(kept);
+        assertEquals(1, restarted.sweep());
+        assertNotNull(restarted.resolve(kept));
+        assertNull(restarted.resolve(orphan));
+        assertEquals(0, restarted.sweep());
+    }
+}
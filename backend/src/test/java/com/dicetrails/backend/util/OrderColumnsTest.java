@@ -0,0 +1,80 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.testing.TestData;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class OrderColumnsTest extends TestCase {
+
+    private static final long FROM = TestData.START;
+    private static final long TO = TestData.START + 1000 * 60000L;
+
+    private final List<Order> orders = new ArrayList<>(TestData.orders(1000, 200, 30));
+    private final OrderColumns columns = new OrderColumns();
+
+    @Override
+    protected void setUp() {
+        orders.forEach(columns::add);
+    }
+
+    // What the columns should count, from the orders themselves
+    private int customers(long from, long to, String region, String status) {
+        Set<String> users = new HashSet<>();
+        for (Order order : orders) {
+            if (order.getDate() >= from && order.getDate() <= to
+                    && (region == null || region.equalsIgnoreCase(order.getRegion()))
+                    && (status == null ? !Order.isCancelled(order.getStatus())
+                            : status.equalsIgnoreCase(order.getStatus()))) {
+                users.add(order.getUserId());
+            }
+        }
+        return users.size();
+    }
+
+    private void assertCounts() {
+        for (String region : new String[] { null, "west", "EAST" }) {
+            for (String status : new String[] { null, "cancelled", "Shipped" }) {
+                for (long to : new long[] { TO, FROM + 300 * 60000L }) {
+                    assertEquals(region + " " + status + " " + to, customers(FROM, to, region, status),
+                            columns.countCustomers(FROM, to, region, status));
+                }
+            }
+        }
+    }
+
+    public void testCountsMatchTheOrders() {
+        assertCounts();
+    }
+
+    public void testStatusChangesAndRemovals() {
+        for (int i = 0; i < orders.size(); i += 7) {
+            orders.get(i).setStatus(i % 2 == 0 ? "CANCELLED" : "Shipped");
+            columns.updateStatus(orders.get(i));
+        }
+        for (int i = orders.size() - 1; i >= 0; i -= 3) {
+            columns.remove(orders.remove(i));
+        }
+        assertEquals(orders.size(), columns.size());
+        assertCounts();
+    }
+
+    public void testUserOrdinalsAreReused() {
+        for (Order order : orders) {
+            columns.remove(order);
+        }
+        assertEquals(0, columns.countCustomers(Long.MIN_VALUE, Long.MAX_VALUE, null, null));
+        List<Order> others = TestData.orders(1000, 200, 30);
+        for (Order order : others) {
+            order.setUserId("other-" + order.getUserId());
+            columns.add(order);
+        }
+        orders.clear();
+        orders.addAll(others);
+        assertCounts();
+    }
+}
@@ -0,0 +1,160 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.TreeSet;
+
+public class OrderQueryTest extends TestCase {
+
+    private final TreeSet<Order> byDate = new TreeSet<>(OrderQuery.DATE_ORDER);
+
+    @Override
+    protected void setUp() {
+        // Dates 10, 20, ..., 100, with a second order on date 50
+        for (int i = 1; i <= 10; i++) {
+            byDate.add(order("o" + i, i * 10L, i % 2 == 0 ? "Shipped" : "Order Placed"));
+        }
+        byDate.add(order("o5b", 50L, "Shipped"));
+    }
+
+    private static Order order(String id, long date, String status) {
+        Order order = new Order();
+        order.setOrderId(id);
+        order.setDate(date);
+        order.setStatus(status);
+        return order;
+    }
+
+    private static List<String> ids(OrderQuery.Page page) {
+        List<String> ids = new ArrayList<>();
+        for (Order order : page.getOrders()) {
+            ids.add(order.getOrderId());
+        }
+        return ids;
+    }
+
+    private static OrderQuery query(Long from, Long to, boolean newestFirst, int limit) {
+        OrderQuery query = new OrderQuery();
+        query.setFrom(from);
+        query.setTo(to);
+        query.setNewestFirst(newestFirst);
+        query.setLimit(limit);
+        return query;
+    }
+
+    private static String cursor(long date, String id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((date + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void testCursorRoundTrip() {
+        Order order = order("30000042", 1700000000000L, "Shipped");
+        OrderQuery query = new OrderQuery();
+        query.setCursor(OrderQuery.encodeCursor(order));
+        assertEquals(0, OrderQuery.DATE_ORDER.compare(order, query.getAfter()));
+        assertEquals("30000042", query.getAfter().getOrderId());
+        assertEquals(1700000000000L, query.getAfter().getDate());
+    }
+
+    public void testCursorKeepsIdsWithColons() {
+        OrderQuery query = new OrderQuery();
+        query.setCursor(OrderQuery.encodeCursor(order("legacy:7", 5L, null)));
+        assertEquals("legacy:7", query.getAfter().getOrderId());
+    }
+
+    public void testEmptyCursorStartsAtTheBeginning() {
+        OrderQuery query = new OrderQuery();
+        query.setCursor("");
+        assertNull(query.getAfter());
+        query.setCursor(null);
+        assertNull(query.getAfter());
+    }
+
+    public void testMalformedCursorsAreRejected() {
+        for (String bad : new String[] { "!!!", cursor(1, "x").substring(1), "bm9jb2xvbg", cursor(1, "x") + "$" }) {
+            try {
+                new OrderQuery().setCursor(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException e) {
+                assertEquals("Invalid cursor", e.getMessage());
+            }
+        }
+    }
+
+    public void testPagesFollowEachOtherNewestFirst() {
+        OrderQuery query = query(null, null, true, 4);
+        OrderQuery.Page first = query.page(byDate);
+        assertEquals(List.of("o10", "o9", "o8", "o7"), ids(first));
+        assertTrue(first.hasMore());
+
+        query.setCursor(first.getNextCursor());
+        OrderQuery.Page second = query.page(byDate);
+        assertEquals(List.of("o6", "o5b", "o5", "o4"), ids(second));
+
+        query.setCursor(second.getNextCursor());
+        OrderQuery.Page last = query.page(byDate);
+        assertEquals(List.of("o3", "o2", "o1"), ids(last));
+        assertFalse(last.hasMore());
+        assertNull(last.getNextCursor());
+    }
+
+    public void testPagesFollowEachOtherOldestFirstWithinTheWindow() {
+        OrderQuery query = query(30L, 70L, false, 3);
+        OrderQuery.Page first = query.page(byDate);
+        assertEquals(List.of("o3", "o4", "o5"), ids(first));
+        query.setCursor(first.getNextCursor());
+        OrderQuery.Page second = query.page(byDate);
+        assertEquals(List.of("o5b", "o6", "o7"), ids(second));
+        assertFalse(second.hasMore());
+    }
+
+    public void testFiltersApplyWithinPages() {
+        OrderQuery query = query(null, null, false, 2);
+        query.setStatus("shipped");
+        OrderQuery.Page page = query.page(byDate);
+        assertEquals(List.of("o2", "o4"), ids(page));
+        query.setCursor(page.getNextCursor());
+        assertEquals(List.of("o5b", "o6"), ids(query.page(byDate)));
+    }
+
+    public void testCursorAboveTheWindowIsClamped() {
+        OrderQuery newest = query(30L, 60L, true, 10);
+        newest.setCursor(cursor(95L, "o9"));
+        assertEquals(List.of("o6", "o5b", "o5", "o4", "o3"), ids(newest.page(byDate)));
+
+        OrderQuery oldest = query(30L, 60L, false, 10);
+        oldest.setCursor(cursor(95L, "o9"));
+        assertEquals(List.of(), ids(oldest.page(byDate)));
+    }
+
+    public void testCursorBelowTheWindowIsClamped() {
+        OrderQuery oldest = query(30L, 60L, false, 10);
+        oldest.setCursor(cursor(5L, "o0"));
+        assertEquals(List.of("o3", "o4", "o5", "o5b", "o6"), ids(oldest.page(byDate)));
+
+        OrderQuery newest = query(30L, 60L, true, 10);
+        newest.setCursor(cursor(5L, "o0"));
+        assertEquals(List.of(), ids(newest.page(byDate)));
+    }
+
+    public void testEmptyOrInvertedWindows() {
+        assertEquals(List.of(), ids(query(61L, 69L, true, 10).page(byDate)));
+        assertEquals(List.of(), ids(query(70L, 30L, false, 10).page(byDate)));
+        assertEquals(List.of("o5", "o5b"), ids(query(50L, 50L, false, 10).page(byDate)));
+    }
+
+    public void testCursorAtTheWindowEdge() {
+        OrderQuery query = query(30L, 60L, false, 10);
+        query.setCursor(OrderQuery.encodeCursor(byDate.last()));
+        assertEquals(List.of(), ids(query.page(byDate)));
+
+        OrderQuery unbounded = query(null, Long.MAX_VALUE, false, 10);
+        unbounded.setCursor(cursor(90L, "o9"));
+        assertEquals(List.of("o10"), ids(unbounded.page(byDate)));
+    }
+}
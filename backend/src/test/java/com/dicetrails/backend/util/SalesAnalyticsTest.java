@@ -0,0 +1,131 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.testing.TestData;
+import com.google.gson.Gson;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class SalesAnalyticsTest extends TestCase {
+
+    private static final long FROM = TestData.START;
+    private static final long TO = TestData.START + 500 * 60000L; // The last order's minute
+
+    private final Gson gson = new Gson();
+    private final List<Order> orders = TestData.orders(500, 50, 30);
+
+    private static SalesAnalytics recorded(List<Order> orders) {
+        SalesAnalytics analytics = new SalesAnalytics();
+        for (Order order : orders) {
+            analytics.record(order, order.getStatus(), 1);
+        }
+        return analytics;
+    }
+
+    private void assertSameReports(SalesAnalytics expected, SalesAnalytics actual) {
+        for (SalesAnalytics.Granularity granularity : SalesAnalytics.Granularity.values()) {
+            for (String status : new String[] { null, "Cancelled", "Shipped" }) {
+                // As trees, so the order of the region and status maps does not matter
+                assertEquals(granularity + " " + status,
+                        gson.toJsonTree(expected.report(granularity, FROM, TO, null, status)),
+                        gson.toJsonTree(actual.report(granularity, FROM, TO, null, status)));
+            }
+        }
+    }
+
+    public void testTakingEveryOrderBackLeavesNothing() {
+        SalesAnalytics analytics = recorded(orders);
+        for (Order order : orders) {
+            analytics.record(order, order.getStatus(), -1);
+        }
+        assertSameReports(new SalesAnalytics(), analytics);
+    }
+
+    public void testStatusChangesMatchARecount() {
+        SalesAnalytics analytics = recorded(orders);
+        for (int i = 0; i < orders.size(); i += 3) {
+            Order order = orders.get(i);
+            // Through every status and back, as DataManager.onOrderStatusChanged records them
+            for (int step = 1; step <= TestData.STATUSES.length; step++) {
+                String oldStatus = order.getStatus();
+                order.setStatus(TestData.STATUSES[(i + step) % TestData.STATUSES.length]);
+                analytics.record(order, oldStatus, -1);
+                analytics.record(order, order.getStatus(), 1);
+            }
+            String oldStatus = order.getStatus();
+            order.setStatus(i % 2 == 0 ? "Cancelled" : "Delivered");
+            analytics.record(order, oldStatus, -1);
+            analytics.record(order, order.getStatus(), 1);
+        }
+        assertSameReports(recorded(orders), analytics);
+    }
+
+    public void testCancelledOrdersOnlyCountUnderTheirStatus() {
+        Order order = orders.get(0);
+        order.setStatus("Cancelled");
+        SalesAnalytics analytics = recorded(List.of(order));
+
+        SalesAnalytics.Report report = analytics.report(SalesAnalytics.Granularity.DAY, FROM, FROM, null, null);
+        assertEquals(0, report.getTotals().getOrders());
+        assertEquals(1, report.getBuckets().get(0).getByStatus().get("Cancelled").getOrders());
+        assertTrue(report.getBuckets().get(0).getByRegion().isEmpty());
+
+        report = analytics.report(SalesAnalytics.Granularity.DAY, FROM, FROM, null, "cancelled");
+        assertEquals(1, report.getTotals().getOrders());
+        assertEquals(order.getTotalAmount(), report.getTotals().getRevenue());
+    }
+
+    public void testCancelledIsMatchedInAnyCase() {
+        Order order = orders.get(0);
+        order.setStatus("CANCELLED");
+        SalesAnalytics.Report report = recorded(List.of(order))
+                .report(SalesAnalytics.Granularity.DAY, FROM, FROM, null, null);
+        assertEquals(0, report.getTotals().getOrders());
+    }
+
+    public void testTotalsAddUpAcrossGranularities() {
+        SalesAnalytics analytics = recorded(orders);
+        int active = 0;
+        double revenue = 0;
+        for (Order order : orders) {
+            if (!"Cancelled".equals(order.getStatus())) {
+                active++;
+                revenue += order.getTotalAmount();
+            }
+        }
+        for (SalesAnalytics.Granularity granularity : SalesAnalytics.Granularity.values()) {
+            SalesAnalytics.Metrics totals = analytics.report(granularity, FROM, TO, null, null).getTotals();
+            assertEquals(granularity.toString(), active, totals.getOrders());
+            assertEquals(granularity.toString(), revenue, totals.getRevenue(), 1e-6);
+        }
+    }
+
+    public void testRegionFilterIgnoresCase() {
+        SalesAnalytics analytics = recorded(orders);
+        int west = 0;
+        for (Order order : orders) {
+            if ("west".equals(order.getRegion()) && !"Cancelled".equals(order.getStatus())) {
+                west++;
+            }
+        }
+        assertEquals(west, analytics.report(SalesAnalytics.Granularity.MONTH, FROM, TO, "WEST", null)
+                .getTotals().getOrders());
+    }
+
+    public void testEmptyBucketsAreReported() {
+        SalesAnalytics.Report report = new SalesAnalytics().report(SalesAnalytics.Granularity.HOUR, FROM,
+                FROM + 5 * 60 * 60000L, null, null);
+        assertEquals(6, report.getBuckets().size());
+        assertEquals(0, report.getTotals().getOrders());
+    }
+
+    public void testTooManyBucketsAreRejected() {
+        try {
+            new SalesAnalytics().report(SalesAnalytics.Granularity.HOUR, FROM, FROM + 2000 * 60 * 60000L, null, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Range covers more than 1000 hour buckets", e.getMessage());
+        }
+    }
+}
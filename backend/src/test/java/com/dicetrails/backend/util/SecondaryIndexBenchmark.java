@@ -0,0 +1,63 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.Review;
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Orders of one user and reviews of one product through DataManager's secondary indexes,
+ * against the full-collection filter {@code getOrders} and {@code getReviews} used to run.
+ * Loads a DataManager from generated files in the working directory (target/test-data).
+ *
+ * Properties: {@code bench.orders} (default 100000), {@code bench.reviews} (default 50000);
+ * the request's sizes are 1000000 and 500000, with e.g. {@code -DargLine=-Xmx4g}.
+ */
+public class SecondaryIndexBenchmark extends TestCase {
+
+    public void testIndexedLookupsAgainstScans() throws IOException {
+        int orderCount = Bench.intProperty("orders", 100000);
+        int reviewCount = Bench.intProperty("reviews", 50000);
+        int users = Math.max(1, orderCount / 20);
+        int products = 300;
+        for (String name : List.of("orders.json", "reviews.json", "orders.bin", "reviews.bin", "sequences.json")) {
+            Files.deleteIfExists(Paths.get(name));
+        }
+        TestData.writeJson(Paths.get("orders.json"), TestData.orders(orderCount, users, products));
+        TestData.writeJson(Paths.get("reviews.json"), TestData.reviews(reviewCount, products));
+
+        DataManager data = DataManager.getInstance();
+        try {
+            List<Order> allOrders = data.getAllOrders();
+            List<Review> allReviews = data.getAllReviews();
+            int[] next = { 0 };
+
+            double indexedOrders = Bench.nanosPerOp(2000,
+                    () -> data.getOrders("user" + next[0]++ % users + "@example.com").size());
+            double scannedOrders = Bench.nanosPerOp(20, () -> allOrders.stream()
+                    .filter(order -> order.getUserId().equals("user" + next[0]++ % users + "@example.com"))
+                    .collect(Collectors.toList()).size());
+            double indexedReviews = Bench.nanosPerOp(2000,
+                    () -> data.getReviews(String.valueOf(1 + next[0]++ % products)).size());
+            double scannedReviews = Bench.nanosPerOp(20, () -> allReviews.stream()
+                    .filter(review -> review.getProductId().equals(String.valueOf(1 + next[0]++ % products)))
+                    .collect(Collectors.toList()).size());
+
+            Bench.report("%d orders of %d users, %d reviews of %d products", orderCount, users, reviewCount, products);
+            Bench.report("%-28s %12.1f us", "orders by user, index", indexedOrders / 1e3);
+            Bench.report("%-28s %12.1f us", "orders by user, scan", scannedOrders / 1e3);
+            Bench.report("%-28s %12.1f us", "reviews by product, index", indexedReviews / 1e3);
+            Bench.report("%-28s %12.1f us", "reviews by product, scan", scannedReviews / 1e3);
+        } finally {
+            DataManager.shutdownInstance();
+        }
+    }
+}
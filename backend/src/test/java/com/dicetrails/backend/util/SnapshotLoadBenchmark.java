@@ -0,0 +1,75 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import com.dicetrails.backend.testing.TestFiles;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Startup cost of the orders collection: reading the pretty-printed JSON snapshot, as
+ * DataManager writes it, against reading the binary snapshot of the same records. Reports
+ * file size, time and bytes allocated per load.
+ *
+ * Properties: {@code bench.orders} (default 100000; the request's size is 1000000, with
+ * e.g. {@code -DargLine=-Xmx4g}).
+ */
+public class SnapshotLoadBenchmark extends TestCase {
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public void testJsonAgainstBinaryLoad() throws IOException {
+        List<Order> orders = TestData.orders(Bench.intProperty("orders", 100000), 5000, 300);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Path dir = TestFiles.createTempDir("snapshot-bench");
+        try {
+            Path json = dir.resolve("orders.json");
+            try (Writer writer = Files.newBufferedWriter(json, StandardCharsets.UTF_8)) {
+                gson.toJson(orders, writer);
+            }
+            Path binary = dir.resolve("orders.bin");
+            try (OutputStream out = Files.newOutputStream(binary)) {
+                BinarySnapshot.write(orders, BinarySnapshot.Source.of(json, true), out);
+            }
+
+            Bench.report("%d orders", orders.size());
+            Bench.report("%-10s %12s %12s %16s", "", "file MB", "ms/load", "MB allocated");
+            report("JSON", json, () -> StreamingJsonLoader.read(json, gson, Order.class, order -> { }), orders.size());
+            report("binary", binary, () -> BinarySnapshot.read(binary, Order.class), orders.size());
+        } finally {
+            TestFiles.deleteRecursively(dir);
+        }
+    }
+
+    private interface Load {
+        List<Order> run() throws IOException;
+    }
+
+    private void report(String label, Path file, Load load, int expected) throws IOException {
+        long thread = Thread.currentThread().getId();
+        long[] allocated = { 0 };
+        double nanos = Bench.nanosPerOp(3, () -> {
+            long before = threads.getThreadAllocatedBytes(thread);
+            try {
+                assertEquals(expected, load.run().size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            allocated[0] = threads.getThreadAllocatedBytes(thread) - before;
+        });
+        Bench.report("%-10s %12.1f %12.1f %16.1f", label, Files.size(file) / 1e6, nanos / 1e6, allocated[0] / 1e6);
+    }
+}
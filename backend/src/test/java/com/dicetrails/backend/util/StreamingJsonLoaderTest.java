@@ -0,0 +1,117 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.model.Review;
+import com.dicetrails.backend.testing.TestFiles;
+import com.google.gson.Gson;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamingJsonLoaderTest extends TestCase {
+
+    private final Gson gson = new Gson();
+    private Path dir;
+    private Path file;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TestFiles.createTempDir("streaming-loader-test");
+        file = dir.resolve("reviews.json");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    private List<String> readIds(String json, List<String> seen) throws IOException {
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        List<String> ids = new ArrayList<>();
+        for (Review review : StreamingJsonLoader.read(file, gson, Review.class, review -> seen.add(review.getId()))) {
+            ids.add(review.getId());
+        }
+        return ids;
+    }
+
+    private Path backup() {
+        return dir.resolve("reviews.json.corrupt");
+    }
+
+    public void testReadsEveryRecordAndReportsEachOne() throws IOException {
+        List<String> seen = new ArrayList<>();
+        assertEquals(List.of("r1", "r2", "r3"),
+                readIds("[{\"id\":\"r1\"},{\"id\":\"r2\",\"rating\":4},\n{\"id\":\"r3\"}]", seen));
+        assertEquals(List.of("r1", "r2", "r3"), seen);
+        assertFalse(Files.exists(backup()));
+    }
+
+    public void testEmptyAndNullFiles() throws IOException {
+        assertEquals(List.of(), readIds("[]", new ArrayList<>()));
+        assertEquals(List.of(), readIds("null", new ArrayList<>()));
+    }
+
+    public void testSkipsARecordThatFailsToBindAndResumes() throws IOException {
+        List<String> seen = new ArrayList<>();
+        // A string where the rating number belongs, part-way into a nested record
+        String json = "[{\"id\":\"r1\"},"
+                + "{\"id\":\"r2\",\"media\":[{\"type\":\"image\"}],\"rating\":\"five\",\"content\":\"x\"},"
+                + "{\"id\":\"r3\"}]";
+        assertEquals(List.of("r1", "r3"), readIds(json, seen));
+        assertEquals(List.of("r1", "r3"), seen);
+        assertTrue(Files.exists(backup()));
+        assertEquals(json, new String(Files.readAllBytes(backup()), StandardCharsets.UTF_8));
+    }
+
+    public void testSkipsARecordOfTheWrongShape() throws IOException {
+        assertEquals(List.of("r1", "r3"), readIds("[{\"id\":\"r1\"},\"r2\",{\"id\":\"r3\"}]", new ArrayList<>()));
+        assertTrue(Files.exists(backup()));
+    }
+
+    public void testKeepsTheRecordsBeforeATruncation() throws IOException {
+        String json = "[{\"id\":\"r1\"},{\"id\":\"r2\"},{\"id\":\"r3\",\"cont";
+        assertEquals(List.of("r1", "r2"), readIds(json, new ArrayList<>()));
+        assertEquals(json, new String(Files.readAllBytes(backup()), StandardCharsets.UTF_8));
+    }
+
+    public void testStopsAtASyntaxError() throws IOException {
+        assertEquals(List.of("r1"), readIds("[{\"id\":\"r1\"},{\"id\" \"r2\"},{\"id\":\"r3\"}]", new ArrayList<>()));
+        assertTrue(Files.exists(backup()));
+    }
+
+    public void testFailsOnDamageWhenPartialResultsAreNotAllowed() throws IOException {
+        String[] damaged = {
+                "[{\"id\":\"r1\"},{\"id\":\"r2\",\"cont",
+                "[{\"id\":\"r1\"},{\"id\" \"r2\"}]",
+                "[{\"id\":\"r1\"},{\"id\":\"r2\",\"rating\":\"five\"}]" };
+        for (String json : damaged) {
+            Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+            List<String> seen = new ArrayList<>();
+            try {
+                StreamingJsonLoader.read(file, gson, Review.class, review -> seen.add(review.getId()), false);
+                fail("read " + json);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("reviews.json"));
+            }
+            assertEquals(json, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            assertFalse(Files.exists(backup()));
+        }
+
+        Files.write(file, "[{\"id\":\"r1\"}]".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, StreamingJsonLoader.read(file, gson, Review.class, review -> { }, false).size());
+    }
+
+    public void testBindsThroughTheGivenGson() throws IOException {
+        Path orders = dir.resolve("orders.json");
+        Files.write(orders, "[{\"orderId\":\"30000001\",\"items\":[{\"_id\":7,\"quantity\":2}]}]"
+                .getBytes(StandardCharsets.UTF_8));
+        List<Order> read = StreamingJsonLoader.read(orders, gson, Order.class, order -> { });
+        assertEquals(1, read.size());
+        assertEquals(7, read.get(0).getItems().get(0).getProductId());
+    }
+}
@@ -0,0 +1,65 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.model.Order;
+import com.dicetrails.backend.testing.Bench;
+import com.dicetrails.backend.testing.TestData;
+import com.dicetrails.backend.testing.TestFiles;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Cost of persisting one changed order: rewriting the whole pretty-printed collection
+ * (sync mode) against appending one compact record to the log (WAL mode), as the
+ * collection grows. The append should stay flat.
+ *
+ * Properties: {@code bench.orders} (largest size, default 100000), {@code bench.fsync}
+ * (sync every write to disk, default false).
+ */
+public class WriteAheadLogBenchmark extends TestCase {
+
+    private final Gson pretty = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson compact = new Gson();
+
+    public void testPerWriteCostAsTheCollectionGrows() throws IOException {
+        int largest = Bench.intProperty("orders", 100000);
+        boolean fsync = Boolean.getBoolean("bench.fsync");
+        Path dir = TestFiles.createTempDir("wal-bench");
+        try {
+            Bench.report("%10s %18s %18s", "orders", "snapshot ms/write", "log us/write");
+            for (int size = 1000; size <= largest; size *= 10) {
+                List<Order> orders = TestData.orders(size, 5000, 300);
+                Path snapshot = dir.resolve("orders.json");
+                WriteAheadLog log = new WriteAheadLog(dir.resolve("orders.json.wal").toString(), fsync);
+                Order changed = orders.get(size / 2);
+
+                double snapshotNanos = Bench.nanosPerOp(Math.max(2, 20000 / size), () -> {
+                    try (Writer writer = Files.newBufferedWriter(snapshot, StandardCharsets.UTF_8)) {
+                        pretty.toJson(orders, writer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                double logNanos = Bench.nanosPerOp(2000, () -> {
+                    try {
+                        log.append(WriteAheadLog.OP_PUT, changed.getOrderId(), compact.toJsonTree(changed));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                log.close();
+                Bench.report("%10d %18.2f %18.2f", size, snapshotNanos / 1e6, logNanos / 1e3);
+            }
+        } finally {
+            TestFiles.deleteRecursively(dir);
+        }
+    }
+}
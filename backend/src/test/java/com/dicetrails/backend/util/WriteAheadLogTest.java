@@ -0,0 +1,138 @@
+package com.dicetrails.backend.util;
+
+import com.dicetrails.backend.testing.TestFiles;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class WriteAheadLogTest extends TestCase {
+
+    private Path dir;
+    private Path file;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TestFiles.createTempDir("wal");
+        file = dir.resolve("orders.json.wal");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    private WriteAheadLog log() {
+        return new WriteAheadLog(file.toString(), false);
+    }
+
+    private static List<String> replay(WriteAheadLog log) {
+        List<String> applied = new ArrayList<>();
+        log.replay((op, key, value) -> applied.add(op + " " + key + (value == null ? "" : " " + value)));
+        return applied;
+    }
+
+    private void appendRaw(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    public void testReplaysRecordsInOrder() throws IOException {
+        WriteAheadLog log = log();
+        log.append(WriteAheadLog.OP_PUT, "1", new JsonPrimitive("a"));
+        log.append(WriteAheadLog.OP_PUT, "2", new JsonPrimitive("b"));
+        log.append(WriteAheadLog.OP_DELETE, "1", null);
+        log.close();
+
+        WriteAheadLog reopened = log();
+        assertEquals(List.of("put 1 \"a\"", "put 2 \"b\"", "del 1"), replay(reopened));
+        assertFalse(reopened.isDamaged());
+        assertEquals(3, reopened.size());
+    }
+
+    public void testBatchIsReplayedLikeSingleAppends() throws IOException {
+        Map<String, JsonElement> values = new LinkedHashMap<>();
+        values.put("7", new JsonPrimitive(7));
+        values.put("8", new JsonPrimitive(8));
+        WriteAheadLog log = log();
+        log.appendPuts(values);
+        log.close();
+
+        assertEquals(List.of("put 7 7", "put 8 8"), replay(log()));
+    }
+
+    public void testTornTailStopsReplayAndMarksDamaged() throws IOException {
+        WriteAheadLog log = log();
+        log.append(WriteAheadLog.OP_PUT, "1", new JsonPrimitive("a"));
+        log.close();
+        appendRaw("{\"op\":\"put\",\"key\":\"2\",\"value\":{\"sta"); // Crash mid-append
+
+        WriteAheadLog reopened = log();
+        assertEquals(List.of("put 1 \"a\""), replay(reopened));
+        assertTrue(reopened.isDamaged());
+    }
+
+    public void testNothingAfterACorruptRecordIsApplied() throws IOException {
+        appendRaw("{\"op\":\"put\",\"key\":\"1\",\"value\":1}\n"
+                + "not json at all\n"
+                + "{\"op\":\"put\",\"key\":\"2\",\"value\":2}\n");
+
+        WriteAheadLog log = log();
+        assertEquals(List.of("put 1 1"), replay(log));
+        assertTrue(log.isDamaged());
+    }
+
+    public void testRecordsWithoutAnOpOrWithAnObjectKeyAreCorrupt() throws IOException {
+        appendRaw("{\"key\":\"1\",\"value\":1}\n");
+        WriteAheadLog log = log();
+        assertEquals(List.of(), replay(log));
+        assertTrue(log.isDamaged());
+
+        Files.delete(file);
+        appendRaw("{\"op\":\"put\",\"key\":{\"nested\":1},\"value\":1}\n");
+        assertEquals(List.of(), replay(log));
+        assertTrue(log.isDamaged());
+    }
+
+    public void testMissingKeyIsReplayedAsNull() throws IOException {
+        appendRaw("{\"op\":\"del\"}\n");
+        WriteAheadLog log = log();
+        assertEquals(List.of("del null"), replay(log));
+        assertFalse(log.isDamaged());
+    }
+
+    public void testBlankLinesAreSkipped() throws IOException {
+        appendRaw("\n{\"op\":\"del\",\"key\":\"1\"}\n\n");
+        WriteAheadLog log = log();
+        assertEquals(List.of("del 1"), replay(log));
+        assertFalse(log.isDamaged());
+    }
+
+    public void testCleanReplayClearsTheDamagedFlag() throws IOException {
+        appendRaw("garbage\n");
+        WriteAheadLog log = log();
+        replay(log);
+        assertTrue(log.isDamaged());
+
+        log.truncate();
+        assertTrue(log.isEmpty());
+        log.append(WriteAheadLog.OP_PUT, "1", new JsonPrimitive(1));
+        assertEquals(List.of("put 1 1"), replay(log));
+        assertFalse(log.isDamaged());
+    }
+
+    public void testMissingLogIsEmptyAndNotDamaged() {
+        WriteAheadLog log = log();
+        assertTrue(log.isEmpty());
+        assertEquals(0, log.replay((op, key, value) -> fail("nothing to replay")));
+        assertFalse(log.isDamaged());
+    }
+}
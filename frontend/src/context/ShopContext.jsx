@@ -41,8 +41,8 @@ const ShopContextProvider = (props) => {
 
     const loadProductsData = async () => {
         try {
-            //const response = await fetch(backendUrl + '/api/products');
-            const response = await fetch(backendUrl + '/api/products?t=' + Date.now());
+            // 'no-cache' revalidates with the ETag, so unchanged catalogues come back as 304
+            const response = await fetch(backendUrl + '/api/products', { cache: 'no-cache' });
             const data = await response.json();
             if (data && Array.isArray(data)) {
                 setProducts(data);
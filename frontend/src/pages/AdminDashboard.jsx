@@ -30,8 +30,8 @@ const AdminDashboard = () => {
   useEffect(() => {
     const fetchFreshData = async () => {
         try {
-            // The timestamp (?t=...) forces the browser to get the REAL file
-            const response = await fetch('http://localhost:8080/api/products?t=' + Date.now());
+            // 'no-cache' always revalidates, so admin edits show up immediately
+            const response = await fetch('http://localhost:8080/api/products', { cache: 'no-cache' });
             const data = await response.json();
             
             if (data) {